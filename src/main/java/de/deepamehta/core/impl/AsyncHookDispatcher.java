@@ -0,0 +1,160 @@
+package de.deepamehta.core.impl;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+
+
+/**
+ * Delivers hook events on a bounded pool of worker threads.
+ * <p>
+ * The pool consists of a fixed number of lanes, each one a single worker thread with a bounded queue. An event is
+ * queued to the lane determined by its key (a topic or relation ID). So, the events of one key are delivered in the
+ * order they are dispatched. When a lane's queue is full the dispatching thread blocks (back-pressure).
+ * <p>
+ * Events dispatched by a worker thread itself (e.g. a hook creates topics, and the commit triggers further
+ * asynchronous hooks) are queued without blocking, even if the queue is full. A worker waiting for space in a queue
+ * which only workers can drain would stop its lane for good.
+ * <p>
+ * The number of lanes and the queue size are set by the system properties <code>dm3.asynchooks.threads</code>
+ * (default 4) and <code>dm3.asynchooks.queuesize</code> (default 10000).
+ */
+class AsyncHookDispatcher {
+
+    // ------------------------------------------------------------------------------------------------------- Constants
+
+    private static final int LANE_COUNT = Integer.getInteger("dm3.asynchooks.threads", 4);
+    private static final int QUEUE_SIZE = Integer.getInteger("dm3.asynchooks.queuesize", 10000);
+
+    private static final int SHUTDOWN_TIMEOUT = 30;     // in seconds
+
+    // ---------------------------------------------------------------------------------------------- Instance Variables
+
+    private ThreadPoolExecutor[] lanes = new ThreadPoolExecutor[LANE_COUNT];
+    // The free queue places per lane. Note: the queues themselves are unbounded. The bound is enforced by these
+    // semaphores, for the threads which are not workers.
+    private Semaphore[] capacities = new Semaphore[LANE_COUNT];
+
+    private Logger logger = Logger.getLogger(getClass().getName());
+
+    // ---------------------------------------------------------------------------------------------------- Constructors
+
+    /**
+     * Note: the worker threads are started lazily, when the first event is dispatched to a lane.
+     */
+    AsyncHookDispatcher() {
+        for (int i = 0; i < LANE_COUNT; i++) {
+            lanes[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new LinkedBlockingQueue(),
+                new WorkerFactory(i), new ShutdownPolicy());
+            capacities[i] = new Semaphore(QUEUE_SIZE);
+        }
+    }
+
+    // ----------------------------------------------------------------------------------------- Package Private Methods
+
+    /**
+     * Queues an event for delivery. Blocks while the lane's queue is full, unless called by a worker thread.
+     */
+    void dispatch(long key, final Runnable event) {
+        int i = lane(key);
+        ThreadPoolExecutor lane = lanes[i];
+        if (Thread.currentThread() instanceof Worker) {
+            lane.execute(event);
+            return;
+        }
+        //
+        final Semaphore capacity = capacities[i];
+        try {
+            capacity.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while dispatching an asynchronous hook event", e);
+        }
+        try {
+            lane.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        event.run();
+                    } finally {
+                        capacity.release();
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            capacity.release();
+            throw e;
+        }
+    }
+
+    int lane(long key) {
+        return (int) ((key & Long.MAX_VALUE) % LANE_COUNT);
+    }
+
+    /**
+     * Delivers the queued events, and stops the worker threads.
+     */
+    void shutdown() {
+        for (ThreadPoolExecutor lane : lanes) {
+            lane.shutdown();
+        }
+        try {
+            for (ThreadPoolExecutor lane : lanes) {
+                if (!lane.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.SECONDS)) {
+                    logger.warning("Asynchronous hook events not delivered within " + SHUTDOWN_TIMEOUT +
+                        " seconds -- " + lane.getQueue().size() + " events dropped");
+                    lane.shutdownNow();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // -------------------------------------------------------------------------------------------------- Nested Classes
+
+    private static class WorkerFactory implements ThreadFactory {
+
+        private int lane;
+
+        private WorkerFactory(int lane) {
+            this.lane = lane;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Worker(runnable, "dm3-async-hooks-" + lane);
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    /**
+     * A worker thread. Lets dispatch() tell the worker threads from other threads.
+     */
+    private static class Worker extends Thread {
+
+        private Worker(Runnable runnable, String name) {
+            super(runnable, name);
+        }
+    }
+
+    /**
+     * Rejects events once the dispatcher is shut down. As the queues are unbounded that is the only reason for
+     * rejection.
+     */
+    private static class ShutdownPolicy implements RejectedExecutionHandler {
+
+        @Override
+        public void rejectedExecution(Runnable event, ThreadPoolExecutor lane) {
+            throw new RejectedExecutionException("Asynchronous hook event can't be dispatched -- " +
+                "the dispatcher is shut down");
+        }
+    }
+}
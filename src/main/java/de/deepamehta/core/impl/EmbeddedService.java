@@ -1,8 +1,11 @@
 package de.deepamehta.core.impl;
 
 import de.deepamehta.core.model.DataField;
+import de.deepamehta.core.model.Metric;
 import de.deepamehta.core.model.Topic;
+import de.deepamehta.core.model.TopicPage;
 import de.deepamehta.core.model.TopicType;
+import de.deepamehta.core.model.TraversalDefinition;
 import de.deepamehta.core.model.RelatedTopic;
 import de.deepamehta.core.model.Relation;
 import de.deepamehta.core.service.CoreService;
@@ -24,16 +27,23 @@ import java.io.InputStream;
 import java.io.IOException;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Dictionary;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Logger;
 
 
@@ -49,6 +59,8 @@ public class EmbeddedService implements CoreService {
     private static final String CORE_MIGRATIONS_PACKAGE = "de.deepamehta.core.migrations";
     private static final int REQUIRED_CORE_MIGRATION = 1;
 
+    private static final int DEFAULT_CHUNK_SIZE = 1000;     // number of topics/relations created per transaction
+
     // ---------------------------------------------------------------------------------------------- Instance Variables
 
     /**
@@ -57,8 +69,31 @@ public class EmbeddedService implements CoreService {
      */
     private Map<String, Plugin> plugins = new HashMap();
 
+    /**
+     * Hook dispatch table: for every hook the hook methods of those registered plugins which override it.
+     * Built at plugin registration time. Plugins which don't override a hook are not contained.
+     */
+    private Map<Hook, List<HookMethod>> hookMethods = createHookMethods();
+
+    /**
+     * Routing table of the topic hooks: for every topic hook and topic type URI the hook methods of those plugins
+     * interested in that type (see {@link Plugin#getHookTopicTypeUris}), in registration order.
+     * Built lazily from the hook dispatch table. Replaced as a whole when a plugin (un)registers.
+     */
+    private volatile Map<Hook, Map<String, List<HookMethod>>> topicHookMethods = createTopicHookMethods();
+
+    /**
+     * Routing table of the commands: command name -> executeCommandHook method of the plugin which declares the
+     * command (see {@link Plugin#getCommands}).
+     */
+    private Map<String, HookMethod> commandHandlers = new ConcurrentHashMap();
+
     private Storage storage;
 
+    private Metrics metrics = new Metrics();
+
+    private AsyncHookDispatcher asyncHookDispatcher = new AsyncHookDispatcher();
+
     private enum Hook {
 
         // Note: this hook is triggered only by the plugin itself
@@ -72,13 +107,24 @@ public class EmbeddedService implements CoreService {
          PRE_UPDATE_TOPIC("preUpdateHook",  Topic.class, Map.class),
         POST_UPDATE_TOPIC("postUpdateHook", Topic.class, Map.class),
 
+         PRE_CREATE_TOPICS(PRE_CREATE_TOPIC,  "preCreateTopicsHook",  List.class, Map.class),
+        POST_CREATE_TOPICS(POST_CREATE_TOPIC, "postCreateTopicsHook", List.class, Map.class),
+
          PRE_DELETE_RELATION("preDeleteRelationHook",  Long.TYPE),
         POST_DELETE_RELATION("postDeleteRelationHook", Long.TYPE),
+         PRE_DELETE_RELATIONS(PRE_DELETE_RELATION,  "preDeleteRelationsHook",  List.class),
+        POST_DELETE_RELATIONS(POST_DELETE_RELATION, "postDeleteRelationsHook", List.class),
 
         PROVIDE_TOPIC_PROPERTIES("providePropertiesHook", Topic.class),
         PROVIDE_RELATION_PROPERTIES("providePropertiesHook", Relation.class),
 
+        // Note: the default implementations of the batch hooks trigger the respective single-item hook.
+        // So, a plugin which overrides just the single-item hook must be dispatched the batch hook as well.
+        PROVIDE_TOPICS_PROPERTIES(PROVIDE_TOPIC_PROPERTIES, "provideTopicPropertiesHook", List.class),
+        PROVIDE_RELATIONS_PROPERTIES(PROVIDE_RELATION_PROPERTIES, "provideRelationPropertiesHook", List.class),
+
         ENRICH_TOPIC("enrichTopicHook", Topic.class, Map.class),
+        ENRICH_TOPICS(ENRICH_TOPIC, "enrichTopicsHook", List.class, Map.class),
         ENRICH_TOPIC_TYPE("enrichTopicTypeHook", TopicType.class, Map.class),
 
         // Note: besides regular triggering (see {@link #createTopicType})
@@ -90,10 +136,34 @@ public class EmbeddedService implements CoreService {
 
         private final String methodName;
         private final Class[] paramClasses;
+        private final Hook itemHook;    // for batch hooks: the single-item hook, otherwise null
 
         private Hook(String methodName, Class... paramClasses) {
+            this(null, methodName, paramClasses);
+        }
+
+        private Hook(Hook itemHook, String methodName, Class... paramClasses) {
             this.methodName = methodName;
             this.paramClasses = paramClasses;
+            this.itemHook = itemHook;
+        }
+
+        /**
+         * A post hook a plugin may opt to receive asynchronously (see {@link Plugin#hasAsyncPostHooks}).
+         */
+        private boolean isAsyncCapable() {
+            Hook hook = itemHook != null ? itemHook : this;
+            return hook == POST_CREATE_TOPIC || hook == POST_UPDATE_TOPIC || hook == POST_DELETE_RELATION;
+        }
+
+        /**
+         * A topic hook is routed by topic type. Its first parameter is a topic or a topic type, resp. (batch hook)
+         * a list of topics.
+         */
+        private boolean isTopicHook() {
+            Hook hook = itemHook != null ? itemHook : this;
+            return hook.paramClasses.length > 0 &&
+                (hook.paramClasses[0] == Topic.class || hook.paramClasses[0] == TopicType.class);
         }
     }
 
@@ -128,6 +198,8 @@ public class EmbeddedService implements CoreService {
                 throw ex;
             }
         }
+        //
+        metrics.registerMBeans();
     }
 
     public EmbeddedService(boolean b) {
@@ -152,7 +224,7 @@ public class EmbeddedService implements CoreService {
 
     @Override
     public Topic getTopic(long id, Map clientContext) {
-        Transaction tx = storage.beginTx();
+        Transaction tx = storage.beginReadOnlyTx();
         try {
             Topic topic = storage.getTopic(id);
             triggerHook(Hook.ENRICH_TOPIC, topic, clientContext);
@@ -166,9 +238,25 @@ public class EmbeddedService implements CoreService {
         }
     }
 
+    @Override
+    public Topic getTopic(long id, Set<String> fieldUris, Map clientContext) {
+        Transaction tx = storage.beginReadOnlyTx();
+        try {
+            Topic topic = storage.getTopic(id, fieldUris);
+            triggerHook(Hook.ENRICH_TOPIC, topic, clientContext);
+            tx.success();
+            return topic;
+        } catch (Exception e) {
+            logger.warning("ROLLBACK!");
+            throw new RuntimeException("Topic " + id + " can't be retrieved (fieldUris=" + fieldUris + ")", e);
+        } finally {
+            tx.finish();
+        }
+    }
+
     @Override
     public Topic getTopic(String key, Object value) {
-        Transaction tx = storage.beginTx();
+        Transaction tx = storage.beginReadOnlyTx();
         try {
             Topic topic = storage.getTopic(key, value);
             tx.success();
@@ -183,7 +271,7 @@ public class EmbeddedService implements CoreService {
 
     @Override
     public Topic getTopic(String typeUri, String key, Object value) {
-        Transaction tx = storage.beginTx();
+        Transaction tx = storage.beginReadOnlyTx();
         try {
             Topic topic = storage.getTopic(typeUri, key, value);
             tx.success();
@@ -199,7 +287,7 @@ public class EmbeddedService implements CoreService {
 
     @Override
     public Object getTopicProperty(long topicId, String key) {
-        Transaction tx = storage.beginTx();
+        Transaction tx = storage.beginReadOnlyTx();
         try {
             Object value = storage.getTopicProperty(topicId, key);
             tx.success();
@@ -212,15 +300,34 @@ public class EmbeddedService implements CoreService {
         }
     }
 
+    @Override
+    public List<Topic> getTopics(long[] ids, boolean includeProperties, Map clientContext) {
+        Transaction tx = storage.beginReadOnlyTx();
+        try {
+            List<Topic> topics = storage.getTopics(ids, includeProperties);
+            //
+            if (!includeProperties) {
+                triggerHook(Hook.PROVIDE_TOPICS_PROPERTIES, topics);
+            }
+            triggerHook(Hook.ENRICH_TOPICS, topics, clientContext);
+            //
+            tx.success();
+            return topics;
+        } catch (Exception e) {
+            logger.warning("ROLLBACK!");
+            throw new RuntimeException(ids.length + " topics can't be retrieved", e);
+        } finally {
+            tx.finish();
+        }
+    }
+
     @Override
     public List<Topic> getTopics(String typeUri) {
-        Transaction tx = storage.beginTx();
+        Transaction tx = storage.beginReadOnlyTx();
         try {
             List<Topic> topics = storage.getTopics(typeUri);
             //
-            for (Topic topic : topics) {
-                triggerHook(Hook.PROVIDE_TOPIC_PROPERTIES, topic);
-            }
+            triggerHook(Hook.PROVIDE_TOPICS_PROPERTIES, topics);
             //
             tx.success();
             return topics;
@@ -232,9 +339,62 @@ public class EmbeddedService implements CoreService {
         }
     }
 
+    @Override
+    public List<Topic> getTopics(String typeUri, Set<String> fieldUris) {
+        Transaction tx = storage.beginReadOnlyTx();
+        try {
+            List<Topic> topics = storage.getTopics(typeUri, fieldUris);
+            //
+            triggerHook(Hook.PROVIDE_TOPICS_PROPERTIES, topics);
+            //
+            tx.success();
+            return topics;
+        } catch (Exception e) {
+            logger.warning("ROLLBACK!");
+            throw new RuntimeException("Topics of type \"" + typeUri + "\" can't be retrieved (fieldUris=" +
+                fieldUris + ")", e);
+        } finally {
+            tx.finish();
+        }
+    }
+
+    @Override
+    public TopicPage getTopics(String typeUri, int limit, String cursor) {
+        // error check
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit must be positive (limit=" + limit + ")");
+        }
+        //
+        Transaction tx = storage.beginReadOnlyTx();
+        try {
+            TopicPage page = storage.getTopics(typeUri, limit, cursor);
+            //
+            triggerHook(Hook.PROVIDE_TOPICS_PROPERTIES, page.getTopics());
+            //
+            tx.success();
+            return page;
+        } catch (Exception e) {
+            logger.warning("ROLLBACK!");
+            throw new RuntimeException("Topics of type \"" + typeUri + "\" can't be retrieved (limit=" + limit +
+                ", cursor=" + cursor + ")", e);
+        } finally {
+            tx.finish();
+        }
+    }
+
+    @Override
+    public Iterator<Topic> getTopicIterator(String typeUri, int pageSize) {
+        // error check
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("pageSize must be positive (pageSize=" + pageSize + ")");
+        }
+        //
+        return new PagedTopicIterator(typeUri, pageSize);
+    }
+
     @Override
     public List<Topic> getTopics(String key, Object value) {
-        Transaction tx = storage.beginTx();
+        Transaction tx = storage.beginReadOnlyTx();
         try {
             List<Topic> topics = storage.getTopics(key, value);
             tx.success();
@@ -251,6 +411,13 @@ public class EmbeddedService implements CoreService {
     public List<RelatedTopic> getRelatedTopics(long topicId, List<String> includeTopicTypes,
                                                              List<String> includeRelTypes,
                                                              List<String> excludeRelTypes) {
+        return getRelatedTopics(topicId, includeTopicTypes, includeRelTypes, excludeRelTypes, new HashSet());
+    }
+
+    @Override
+    public List<RelatedTopic> getRelatedTopics(long topicId, List<String> includeTopicTypes,
+                                                             List<String> includeRelTypes,
+                                                             List<String> excludeRelTypes, Set<String> fieldUris) {
         // set defaults
         if (includeTopicTypes == null) includeTopicTypes = new ArrayList();
         if (includeRelTypes   == null) includeRelTypes   = new ArrayList();
@@ -260,15 +427,11 @@ public class EmbeddedService implements CoreService {
             throw new IllegalArgumentException("includeRelTypes and excludeRelTypes can not be used at the same time");
         }
         //
-        Transaction tx = storage.beginTx();
+        Transaction tx = storage.beginReadOnlyTx();
         try {
             List<RelatedTopic> relTopics = storage.getRelatedTopics(topicId, includeTopicTypes, includeRelTypes,
-                                                                                                excludeRelTypes);
-            //
-            for (RelatedTopic relTopic : relTopics) {
-                triggerHook(Hook.PROVIDE_TOPIC_PROPERTIES, relTopic.getTopic());
-                triggerHook(Hook.PROVIDE_RELATION_PROPERTIES, relTopic.getRelation());
-            }
+                                                                                     excludeRelTypes, fieldUris);
+            provideProperties(relTopics);
             //
             tx.success();
             return relTopics;
@@ -280,9 +443,27 @@ public class EmbeddedService implements CoreService {
         }
     }
 
+    @Override
+    public List<RelatedTopic> getRelatedTopics(long topicId, TraversalDefinition traversal) {
+        Transaction tx = storage.beginReadOnlyTx();
+        try {
+            List<RelatedTopic> relTopics = storage.getRelatedTopics(topicId, traversal);
+            provideProperties(relTopics);
+            //
+            tx.success();
+            return relTopics;
+        } catch (Exception e) {
+            logger.warning("ROLLBACK!");
+            throw new RuntimeException("Related topics of topic " + topicId + " can't be retrieved (" +
+                traversal + ")", e);
+        } finally {
+            tx.finish();
+        }
+    }
+
     @Override
     public List<Topic> searchTopics(String searchTerm, String fieldUri, boolean wholeWord, Map clientContext) {
-        Transaction tx = storage.beginTx();
+        Transaction tx = storage.beginReadOnlyTx();
         try {
             List<Topic> searchResult = storage.searchTopics(searchTerm, fieldUri, wholeWord);
             tx.success();
@@ -296,6 +477,122 @@ public class EmbeddedService implements CoreService {
         }
     }
 
+    @Override
+    public List<Topic> searchTopics(String searchTerm, String fieldUri, boolean wholeWord, Set<String> fieldUris,
+                                                                                           Map clientContext) {
+        Transaction tx = storage.beginReadOnlyTx();
+        try {
+            List<Topic> searchResult = storage.searchTopics(searchTerm, fieldUri, wholeWord, fieldUris);
+            tx.success();
+            return searchResult;
+        } catch (Exception e) {
+            logger.warning("ROLLBACK!");
+            throw new RuntimeException("Error while searching topics (searchTerm=" + searchTerm + ", fieldUri=" +
+                fieldUri + ", wholeWord=" + wholeWord + ", fieldUris=" + fieldUris + ", clientContext=" +
+                clientContext + ")", e);
+        } finally {
+            tx.finish();
+        }
+    }
+
+    @Override
+    public List<Topic> searchTopics(String searchTerm, String fieldUri, boolean wholeWord, List<String> topicTypeUris,
+                                                                       int maxResults, int offset, Map clientContext) {
+        // error check
+        if (maxResults < 0 || offset < 0) {
+            throw new IllegalArgumentException("maxResults and offset must not be negative (maxResults=" +
+                maxResults + ", offset=" + offset + ")");
+        }
+        //
+        Transaction tx = storage.beginReadOnlyTx();
+        try {
+            List<Topic> searchResult = storage.searchTopics(searchTerm, fieldUri, wholeWord, topicTypeUris,
+                                                                                             maxResults, offset);
+            tx.success();
+            return searchResult;
+        } catch (Exception e) {
+            logger.warning("ROLLBACK!");
+            throw new RuntimeException("Error while searching topics (searchTerm=" + searchTerm + ", fieldUri=" +
+                fieldUri + ", wholeWord=" + wholeWord + ", topicTypeUris=" + topicTypeUris + ", maxResults=" +
+                maxResults + ", offset=" + offset + ", clientContext=" + clientContext + ")", e);
+        } finally {
+            tx.finish();
+        }
+    }
+
+    // ---
+
+    @Override
+    public int countTopics(String typeUri) {
+        Transaction tx = storage.beginReadOnlyTx();
+        try {
+            int count = storage.countTopics(typeUri);
+            tx.success();
+            return count;
+        } catch (Exception e) {
+            logger.warning("ROLLBACK!");
+            throw new RuntimeException("Topics of type \"" + typeUri + "\" can't be counted", e);
+        } finally {
+            tx.finish();
+        }
+    }
+
+    @Override
+    public int countTopics(String key, Object value) {
+        Transaction tx = storage.beginReadOnlyTx();
+        try {
+            int count = storage.countTopics(key, value);
+            tx.success();
+            return count;
+        } catch (Exception e) {
+            logger.warning("ROLLBACK!");
+            throw new RuntimeException("Error while counting topics by property (\"" + key + "\"=" + value + ")", e);
+        } finally {
+            tx.finish();
+        }
+    }
+
+    @Override
+    public int countRelatedTopics(long topicId, List<String> includeTopicTypes, List<String> includeRelTypes,
+                                                                                List<String> excludeRelTypes) {
+        // set defaults
+        if (includeTopicTypes == null) includeTopicTypes = new ArrayList();
+        if (includeRelTypes   == null) includeRelTypes   = new ArrayList();
+        if (excludeRelTypes   == null) excludeRelTypes   = new ArrayList();
+        // error check
+        if (!includeRelTypes.isEmpty() && !excludeRelTypes.isEmpty()) {
+            throw new IllegalArgumentException("includeRelTypes and excludeRelTypes can not be used at the same time");
+        }
+        //
+        Transaction tx = storage.beginReadOnlyTx();
+        try {
+            int count = storage.countRelatedTopics(topicId, includeTopicTypes, includeRelTypes, excludeRelTypes);
+            tx.success();
+            return count;
+        } catch (Exception e) {
+            logger.warning("ROLLBACK!");
+            throw new RuntimeException("Related topics of topic " + topicId + " can't be counted", e);
+        } finally {
+            tx.finish();
+        }
+    }
+
+    @Override
+    public int countSearchResults(String searchTerm, String fieldUri, boolean wholeWord, List<String> topicTypeUris) {
+        Transaction tx = storage.beginReadOnlyTx();
+        try {
+            int count = storage.countSearchResults(searchTerm, fieldUri, wholeWord, topicTypeUris);
+            tx.success();
+            return count;
+        } catch (Exception e) {
+            logger.warning("ROLLBACK!");
+            throw new RuntimeException("Error while counting search results (searchTerm=" + searchTerm +
+                ", fieldUri=" + fieldUri + ", wholeWord=" + wholeWord + ", topicTypeUris=" + topicTypeUris + ")", e);
+        } finally {
+            tx.finish();
+        }
+    }
+
     @Override
     public Topic createTopic(String typeUri, Map properties, Map clientContext) {
         Transaction tx = storage.beginTx();
@@ -319,18 +616,72 @@ public class EmbeddedService implements CoreService {
         }
     }
 
+    @Override
+    public List<Topic> createTopics(String typeUri, List<Map> properties, Map clientContext) {
+        return createTopics(typeUri, properties, DEFAULT_CHUNK_SIZE, clientContext);
+    }
+
+    @Override
+    public List<Topic> createTopics(String typeUri, List<Map> properties, int chunkSize, Map clientContext) {
+        // error check
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive (chunkSize=" + chunkSize + ")");
+        }
+        //
+        TopicType topicType = getTopicType(typeUri, null);      // clientContext=null
+        List<Topic> topics = new ArrayList();
+        for (int i = 0; i < properties.size(); i += chunkSize) {
+            List<Map> chunk = properties.subList(i, Math.min(i + chunkSize, properties.size()));
+            Transaction tx = storage.beginTx();
+            try {
+                List<Topic> ts = new ArrayList();
+                for (Map props : chunk) {
+                    ts.add(new Topic(-1, typeUri, null, initProperties(props, topicType)));
+                }
+                //
+                triggerHook(Hook.PRE_CREATE_TOPICS, ts, clientContext);
+                //
+                List<Map> propertiesList = new ArrayList();
+                for (Topic t : ts) {
+                    propertiesList.add(t.getProperties());
+                }
+                List<Topic> created = storage.createTopics(typeUri, propertiesList);
+                //
+                triggerHook(Hook.POST_CREATE_TOPICS, created, clientContext);
+                triggerHook(Hook.ENRICH_TOPICS, created, clientContext);
+                //
+                tx.success();
+                topics.addAll(created);
+            } catch (Exception e) {
+                logger.warning("ROLLBACK!");
+                throw new RuntimeException("Topics of type \"" + typeUri + "\" can't be created (" + i +
+                    " of " + properties.size() + " topics are created already)", e);
+            } finally {
+                tx.finish();
+            }
+        }
+        return topics;
+    }
+
     @Override
     public void setTopicProperties(long id, Map properties) {
         Transaction tx = storage.beginTx();
         try {
-            Topic topic = getTopic(id, null);   // clientContext=null
+            // Note: the topic is read from storage directly. The update doesn't require the enrichment.
+            Topic topic = storage.getTopic(id);
             Map oldProperties = new HashMap(topic.getProperties()); // copy old properties for comparison with new ones
+            Map changedProperties = getChangedProperties(oldProperties, properties);
+            if (changedProperties.isEmpty()) {
+                logger.info("Properties of topic " + id + " are unchanged -- no update required");
+                tx.success();
+                return;
+            }
             //
-            triggerHook(Hook.PRE_UPDATE_TOPIC, topic, properties);
+            triggerHook(Hook.PRE_UPDATE_TOPIC, topic, changedProperties);
             //
-            storage.setTopicProperties(id, properties);
+            storage.setTopicProperties(id, changedProperties);
             //
-            topic.setProperties(properties);
+            topic.setProperties(changedProperties);
             triggerHook(Hook.POST_UPDATE_TOPIC, topic, oldProperties);
             //
             tx.success();
@@ -344,28 +695,39 @@ public class EmbeddedService implements CoreService {
 
     @Override
     public void deleteTopic(long id) {
-        Transaction tx = storage.beginTx();
+        deleteTopics(new long[] {id});
+    }
+
+    @Override
+    public void deleteTopics(long[] ids) {
+        int i = 0;
+        while (i < ids.length) {
+            i = deleteTopicChunk(ids, i);
+        }
+    }
+
+    @Override
+    public void deleteTopicsByType(String typeUri) {
+        long[] ids;
+        Transaction tx = storage.beginReadOnlyTx();
         try {
-            // delete all the topic's relationships
-            for (Relation rel : storage.getRelations(id)) {
-                deleteRelation(rel.id);
-            }
-            //
-            storage.deleteTopic(id);
+            ids = storage.getTopicIds(typeUri);
             tx.success();
         } catch (Exception e) {
             logger.warning("ROLLBACK!");
-            throw new RuntimeException("Topic " + id + " can't be deleted", e);
+            throw new RuntimeException("Topics of type \"" + typeUri + "\" can't be deleted", e);
         } finally {
             tx.finish();
         }
+        logger.info("Deleting " + ids.length + " topics of type \"" + typeUri + "\"");
+        deleteTopics(ids);
     }
 
     // === Relations ===
 
     @Override
     public Relation getRelation(long id) {
-        Transaction tx = storage.beginTx();
+        Transaction tx = storage.beginReadOnlyTx();
         try {
             Relation relation = storage.getRelation(id);
             tx.success();
@@ -378,9 +740,24 @@ public class EmbeddedService implements CoreService {
         }
     }
 
+    @Override
+    public List<Relation> getRelations(long[] ids) {
+        Transaction tx = storage.beginReadOnlyTx();
+        try {
+            List<Relation> relations = storage.getRelations(ids);
+            tx.success();
+            return relations;
+        } catch (Exception e) {
+            logger.warning("ROLLBACK!");
+            throw new RuntimeException(ids.length + " relations can't be retrieved", e);
+        } finally {
+            tx.finish();
+        }
+    }
+
     @Override
     public Relation getRelation(long srcTopicId, long dstTopicId, String typeId, boolean isDirected) {
-        Transaction tx = storage.beginTx();
+        Transaction tx = storage.beginReadOnlyTx();
         try {
             Relation relation = storage.getRelation(srcTopicId, dstTopicId, typeId, isDirected);
             tx.success();
@@ -396,7 +773,7 @@ public class EmbeddedService implements CoreService {
 
     @Override
     public List<Relation> getRelations(long srcTopicId, long dstTopicId, String typeId, boolean isDirected) {
-        Transaction tx = storage.beginTx();
+        Transaction tx = storage.beginReadOnlyTx();
         try {
             List<Relation> relations = storage.getRelations(srcTopicId, dstTopicId, typeId, isDirected);
             tx.success();
@@ -426,6 +803,36 @@ public class EmbeddedService implements CoreService {
         }
     }
 
+    @Override
+    public List<Relation> createRelations(List<Relation> relations) {
+        return createRelations(relations, DEFAULT_CHUNK_SIZE);
+    }
+
+    @Override
+    public List<Relation> createRelations(List<Relation> relations, int chunkSize) {
+        // error check
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive (chunkSize=" + chunkSize + ")");
+        }
+        //
+        List<Relation> created = new ArrayList();
+        for (int i = 0; i < relations.size(); i += chunkSize) {
+            List<Relation> chunk = relations.subList(i, Math.min(i + chunkSize, relations.size()));
+            Transaction tx = storage.beginTx();
+            try {
+                created.addAll(storage.createRelations(chunk));
+                tx.success();
+            } catch (Exception e) {
+                logger.warning("ROLLBACK!");
+                throw new RuntimeException("Relations can't be created (" + i + " of " + relations.size() +
+                    " relations are created already)", e);
+            } finally {
+                tx.finish();
+            }
+        }
+        return created;
+    }
+
     @Override
     public void setRelationProperties(long id, Map properties) {
         Transaction tx = storage.beginTx();
@@ -460,7 +867,7 @@ public class EmbeddedService implements CoreService {
 
     @Override
     public Set<String> getTopicTypeUris() {
-        Transaction tx = storage.beginTx();
+        Transaction tx = storage.beginReadOnlyTx();
         try {
             Set typeUris = storage.getTopicTypeUris();
             tx.success();
@@ -475,7 +882,7 @@ public class EmbeddedService implements CoreService {
 
     @Override
     public TopicType getTopicType(String typeUri, Map clientContext) {
-        Transaction tx = storage.beginTx();
+        Transaction tx = storage.beginReadOnlyTx();
         try {
             TopicType topicType = storage.getTopicType(typeUri);
             triggerHook(Hook.ENRICH_TOPIC_TYPE, topicType, clientContext);
@@ -575,13 +982,24 @@ public class EmbeddedService implements CoreService {
     public JSONObject executeCommand(String command, Map params, Map clientContext) {
         Transaction tx = storage.beginTx();
         try {
-            Iterator<JSONObject> i = triggerHook(Hook.EXECUTE_COMMAND, command, params, clientContext).iterator();
-            if (!i.hasNext()) {
-                throw new RuntimeException("Command is not handled by any plugin");
-            }
-            JSONObject result = i.next();
-            if (i.hasNext()) {
-                throw new RuntimeException("Ambiguity: more than one plugin returned a result");
+            JSONObject result;
+            HookMethod handler = commandHandlers.get(command);
+            if (handler != null) {
+                result = (JSONObject) handler.invoke(command, params, clientContext);
+                if (result == null) {
+                    throw new RuntimeException("Command is not handled by plugin \"" + handler.plugin.getId() +
+                        "\" although it is declared");
+                }
+            } else {
+                // Fallback for plugins which don't declare their commands: broadcast
+                Iterator<JSONObject> i = triggerHook(Hook.EXECUTE_COMMAND, command, params, clientContext).iterator();
+                if (!i.hasNext()) {
+                    throw new RuntimeException("Command is not handled by any plugin");
+                }
+                result = i.next();
+                if (i.hasNext()) {
+                    throw new RuntimeException("Ambiguity: more than one plugin returned a result");
+                }
             }
             tx.success();
             return result;
@@ -597,14 +1015,27 @@ public class EmbeddedService implements CoreService {
 
     @Override
     public void registerPlugin(Plugin plugin) {
+        Plugin oldPlugin = plugins.get(plugin.getId());
+        // Note: whatever can fail is done before the plugin registry and the dispatch tables are changed.
+        // So, a failed registration leaves the plugin which would have been replaced in place.
+        Set<String> commands = plugin.getCommands();
+        checkCommands(plugin, commands, oldPlugin);
+        List<HookMethod> methods = resolveHookMethods(plugin);
+        //
         plugins.put(plugin.getId(), plugin);
+        if (oldPlugin != null) {
+            unregisterHookMethods(oldPlugin);
+        }
+        registerHookMethods(methods, commands);
     }
 
     @Override
     public void unregisterPlugin(String pluginId) {
-        if (plugins.remove(pluginId) == null) {
+        Plugin plugin = plugins.remove(pluginId);
+        if (plugin == null) {
             throw new RuntimeException("Plugin " + pluginId + " is not registered");
         }
+        unregisterHookMethods(plugin);
     }
 
     @Override
@@ -636,6 +1067,8 @@ public class EmbeddedService implements CoreService {
 
     @Override
     public void shutdown() {
+        asyncHookDispatcher.shutdown();
+        metrics.unregisterMBeans();
         closeDB();
     }
 
@@ -644,18 +1077,144 @@ public class EmbeddedService implements CoreService {
         return storage.beginTx();
     }
 
+    @Override
+    public List<Metric> getMetrics() {
+        return metrics.getSnapshot();
+    }
+
+    // ---
+
+    /**
+     * Returns this service wrapped in a proxy which records the metrics of the service calls.
+     * This is the instance to be registered as OSGi service.
+     */
+    public CoreService getInstrumentedService() {
+        return metrics.instrument(this);
+    }
+
     // ------------------------------------------------------------------------------------------------- Private Methods
 
     // === Topics ===
 
+    /**
+     * Lets the plugins provide the properties of the related topics and their relations.
+     */
+    private void provideProperties(List<RelatedTopic> relTopics) {
+        List<Topic> topics = new ArrayList();
+        List<Relation> relations = new ArrayList();
+        for (RelatedTopic relTopic : relTopics) {
+            topics.add(relTopic.getTopic());
+            relations.add(relTopic.getRelation());
+        }
+        triggerHook(Hook.PROVIDE_TOPICS_PROPERTIES, topics);
+        triggerHook(Hook.PROVIDE_RELATIONS_PROPERTIES, relations);
+    }
+
+    /**
+     * Deletes the topics starting at <code>ids[start]</code> along with their relations, in one transaction. The
+     * chunk takes as many topics as have DEFAULT_CHUNK_SIZE relations in total, at least one topic. The delete
+     * hooks are triggered once for all the chunk's relations.
+     * <p>
+     * A topic with more relations is a hub topic. Its relations are deleted in chunks beforehand, then the topic
+     * itself is deleted. Its type relation goes along with the topic, so a failure never leaves an untyped topic.
+     *
+     * @return  the index of the first topic not deleted.
+     */
+    private int deleteTopicChunk(long[] ids, int start) {
+        // Note: a relation between 2 topics of the chunk is reported by both. It is collected (and counted) once.
+        Set<Long> relIds = new LinkedHashSet();
+        int end = start;
+        boolean isHub = false;
+        Transaction tx = storage.beginTx();
+        try {
+            while (end < ids.length) {
+                List<Long> topicRelIds = storage.getRelationIds(ids[end]);
+                int newRelCount = 0;
+                for (long relId : topicRelIds) {
+                    if (!relIds.contains(relId)) {
+                        newRelCount++;
+                    }
+                }
+                if (relIds.size() + newRelCount > DEFAULT_CHUNK_SIZE) {
+                    if (end == start) {
+                        isHub = true;
+                        relIds = new LinkedHashSet(topicRelIds);
+                    }
+                    break;
+                }
+                relIds.addAll(topicRelIds);
+                end++;
+            }
+            if (!isHub) {
+                List<Long> chunk = new ArrayList(relIds);
+                triggerHook(Hook.PRE_DELETE_RELATIONS, chunk);
+                storage.deleteTopics(Arrays.copyOfRange(ids, start, end));
+                triggerHook(Hook.POST_DELETE_RELATIONS, chunk);
+            }
+            tx.success();
+        } catch (Exception e) {
+            logger.warning("ROLLBACK!");
+            throw new RuntimeException(ids.length == 1 ? "Topic " + ids[0] + " can't be deleted" :
+                "Topics can't be deleted (" + start + " of " + ids.length + " topics are deleted already)", e);
+        } finally {
+            tx.finish();
+        }
+        if (isHub) {
+            logger.info("Deleting " + relIds.size() + " relations of hub topic " + ids[start]);
+            deleteRelations(new ArrayList(relIds));
+            return deleteTopicChunk(ids, start);
+        }
+        return end;
+    }
+
+    /**
+     * Deletes relations in chunks. The delete hooks are triggered in their batch form, once per chunk.
+     */
+    private void deleteRelations(List<Long> relIds) {
+        for (int i = 0; i < relIds.size(); i += DEFAULT_CHUNK_SIZE) {
+            List<Long> chunk = relIds.subList(i, Math.min(i + DEFAULT_CHUNK_SIZE, relIds.size()));
+            Transaction tx = storage.beginTx();
+            try {
+                triggerHook(Hook.PRE_DELETE_RELATIONS, chunk);
+                storage.deleteRelations(chunk);
+                triggerHook(Hook.POST_DELETE_RELATIONS, chunk);
+                tx.success();
+            } catch (Exception e) {
+                logger.warning("ROLLBACK!");
+                throw new RuntimeException("Relations can't be deleted (" + i + " of " + relIds.size() +
+                    " relations are deleted already)", e);
+            } finally {
+                tx.finish();
+            }
+        }
+    }
+
+    /**
+     * Returns the properties whose value differs from the old one.
+     */
+    private Map getChangedProperties(Map oldProperties, Map properties) {
+        Map changedProperties = new HashMap();
+        for (Object key : properties.keySet()) {
+            Object value = properties.get(key);
+            if (value == null || !value.equals(oldProperties.get(key))) {
+                changedProperties.put(key, value);
+            }
+        }
+        return changedProperties;
+    }
+
     // FIXME: method to be dropped. Missing properties are regarded as normal state.
     // Otherwise all instances would be required to be updated once a data field has been added to the type definition.
     // Application logic (server-side) and also the client should cope with missing properties.
     private Map initProperties(Map properties, String typeUri) {
+        return initProperties(properties, getTopicType(typeUri, null));     // clientContext=null
+    }
+
+    private Map initProperties(Map properties, TopicType topicType) {
         if (properties == null) {
             properties = new HashMap();
         }
-        for (DataField dataField : getTopicType(typeUri, null).getDataFields()) {   // clientContext=null
+        for (DataField dataField : topicType.getDataFields()) {
             if (!dataField.getDataType().equals("reference") && properties.get(dataField.getUri()) == null) {
                 properties.put(dataField.getUri(), "");
             }
@@ -663,13 +1222,67 @@ public class EmbeddedService implements CoreService {
         return properties;
     }
 
+    /**
+     * Iterates over the topics of a type by retrieving them page by page.
+     */
+    private class PagedTopicIterator implements Iterator<Topic> {
+
+        private String typeUri;
+        private int pageSize;
+
+        private Iterator<Topic> page;   // the current page, null before the first page is retrieved
+        private String cursor;          // continuation token for the next page, null if there is no next page
+
+        private PagedTopicIterator(String typeUri, int pageSize) {
+            this.typeUri = typeUri;
+            this.pageSize = pageSize;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while ((page == null || !page.hasNext()) && (page == null || cursor != null)) {
+                TopicPage topicPage = getTopics(typeUri, pageSize, cursor);
+                page = topicPage.getTopics().iterator();
+                cursor = topicPage.getCursor();
+            }
+            return page.hasNext();
+        }
+
+        @Override
+        public Topic next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException("There are no more topics of type \"" + typeUri + "\"");
+            }
+            return page.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Topics can't be removed through the iterator");
+        }
+    }
+
     // === Plugins ===
 
     private Set triggerHook(Hook hook, Object... params) {
         try {
             Set resultSet = new HashSet();
-            for (Plugin plugin : plugins.values()) {
-                Object result = triggerHook(plugin, hook, params);
+            for (HookMethod hookMethod : getHookMethods(hook, params)) {
+                Object[] p = params;
+                if (hook.itemHook != null && hook.isTopicHook() && hookMethod.topicTypeUris != null) {
+                    // batch topic hook: the plugin gets only the topics it is interested in
+                    List<Topic> topics = hookMethod.filterTopics((List<Topic>) params[0]);
+                    if (topics.isEmpty()) {
+                        continue;
+                    }
+                    p = params.clone();
+                    p[0] = topics;
+                }
+                if (hookMethod.async) {
+                    dispatchAfterCommit(hook, hookMethod, p);
+                    continue;
+                }
+                Object result = hookMethod.invoke(p);
                 if (result != null) {
                     resultSet.add(result);
                 }
@@ -681,13 +1294,287 @@ public class EmbeddedService implements CoreService {
     }
 
     /**
-     * @throws  NoSuchMethodException
-     * @throws  IllegalAccessException
-     * @throws  InvocationTargetException
+     * Dispatches an asynchronous hook method invocation to the worker pool, once the current transaction is
+     * committed. A batch hook invocation is split up by worker lane, so the events of one topic (resp. relation)
+     * stay in order.
+     * <p>
+     * The hook parameters are snapshotted first: the request thread goes on modifying the topics (e.g. by the
+     * ENRICH_TOPIC hook) while the worker reads them.
+     */
+    private void dispatchAfterCommit(Hook hook, HookMethod hookMethod, Object[] params) {
+        params = snapshot(params);
+        if (hook.itemHook == null) {
+            dispatchAfterCommit(eventKey(params[0]), hookMethod, params);
+            return;
+        }
+        Map<Integer, List> parts = new LinkedHashMap();
+        for (Object item : (List) params[0]) {
+            int lane = asyncHookDispatcher.lane(eventKey(item));
+            List part = parts.get(lane);
+            if (part == null) {
+                part = new ArrayList();
+                parts.put(lane, part);
+            }
+            part.add(item);
+        }
+        for (List part : parts.values()) {
+            Object[] p = params.clone();
+            p[0] = part;
+            dispatchAfterCommit(eventKey(part.get(0)), hookMethod, p);
+        }
+    }
+
+    private void dispatchAfterCommit(final long key, final HookMethod hookMethod, final Object[] params) {
+        final Runnable event = new Runnable() {
+            @Override
+            public void run() {
+                Transaction tx = storage.beginTx();
+                try {
+                    hookMethod.invoke(params);
+                    tx.success();
+                } catch (Exception e) {
+                    logger.warning("ROLLBACK! Asynchronous " + hookMethod.hook + " of plugin \"" +
+                        hookMethod.plugin.getId() + "\" failed: " + e);
+                } finally {
+                    tx.finish();
+                }
+            }
+        };
+        storage.afterCommit(new Runnable() {
+            @Override
+            public void run() {
+                asyncHookDispatcher.dispatch(key, event);
+            }
+        });
+    }
+
+    /**
+     * Copies the topics, topic lists and maps among the hook parameters. Relation IDs are immutable already.
+     */
+    private Object[] snapshot(Object[] params) {
+        Object[] snapshot = new Object[params.length];
+        for (int i = 0; i < params.length; i++) {
+            snapshot[i] = snapshot(params[i]);
+        }
+        return snapshot;
+    }
+
+    private Object snapshot(Object param) {
+        if (param instanceof Topic) {
+            Topic topic = (Topic) param;
+            return new Topic(topic.id, topic.typeUri, topic.label, new HashMap(topic.getProperties()));
+        } else if (param instanceof List) {
+            List list = new ArrayList();
+            for (Object item : (List) param) {
+                list.add(snapshot(item));
+            }
+            return list;
+        } else if (param instanceof Map) {
+            return new HashMap((Map) param);
+        }
+        return param;
+    }
+
+    /**
+     * Events are ordered per topic resp. per relation.
+     */
+    private long eventKey(Object item) {
+        return item instanceof Topic ? ((Topic) item).id : (Long) item;
+    }
+
+    /**
+     * Returns the hook methods to be invoked for the given hook triggering.
+     * For a single-item topic hook these are only the ones interested in the respective topic type.
+     */
+    private List<HookMethod> getHookMethods(Hook hook, Object... params) {
+        if (hook.itemHook != null || !hook.isTopicHook()) {
+            return hookMethods.get(hook);
+        }
+        // Note: the routing table must be obtained before the dispatch table is read.
+        // So, a routing entry is never based on a dispatch table older than the routing table.
+        Map<String, List<HookMethod>> routes = topicHookMethods.get(hook);
+        String typeUri = typeUri((Topic) params[0]);
+        List<HookMethod> methods = routes.get(typeUri);
+        if (methods == null) {
+            methods = new ArrayList();
+            for (HookMethod hookMethod : hookMethods.get(hook)) {
+                if (hookMethod.handles(typeUri)) {
+                    methods.add(hookMethod);
+                }
+            }
+            routes.put(typeUri, methods);
+        }
+        return methods;
+    }
+
+    /**
+     * A topic type is routed by its own URI, a topic by the URI of its type.
+     */
+    private String typeUri(Topic topic) {
+        if (topic instanceof TopicType) {
+            return (String) topic.getProperty("de/deepamehta/core/property/TypeURI");
+        }
+        return topic.typeUri;
+    }
+
+    // ---
+
+    private Map<Hook, List<HookMethod>> createHookMethods() {
+        Map<Hook, List<HookMethod>> hookMethods = new EnumMap(Hook.class);
+        for (Hook hook : Hook.values()) {
+            // Note: the lists are copy-on-write as plugins may (un)register while hooks are triggered.
+            hookMethods.put(hook, new CopyOnWriteArrayList());
+        }
+        return hookMethods;
+    }
+
+    private Map<Hook, Map<String, List<HookMethod>>> createTopicHookMethods() {
+        Map<Hook, Map<String, List<HookMethod>>> topicHookMethods = new EnumMap(Hook.class);
+        for (Hook hook : Hook.values()) {
+            if (hook.isTopicHook()) {
+                topicHookMethods.put(hook, new ConcurrentHashMap());
+            }
+        }
+        return topicHookMethods;
+    }
+
+    /**
+     * Resolves the hook methods of a plugin. Only the hooks actually overridden by the plugin are considered.
      */
-    private Object triggerHook(Plugin plugin, Hook hook, Object... params) throws Exception {
-        Method hookMethod = plugin.getClass().getMethod(hook.methodName, hook.paramClasses);
-        return hookMethod.invoke(plugin, params);
+    private List<HookMethod> resolveHookMethods(Plugin plugin) {
+        List<HookMethod> methods = new ArrayList();
+        for (Hook hook : Hook.values()) {
+            try {
+                Method method = plugin.getClass().getMethod(hook.methodName, hook.paramClasses);
+                if (!isOverridden(plugin, hook)) {
+                    continue;
+                }
+                method.setAccessible(true);     // suppress the access check on every invocation
+                methods.add(new HookMethod(plugin, hook, method));
+            } catch (NoSuchMethodException e) {
+                throw new RuntimeException("Hook method of " + hook + " can't be resolved for plugin \"" +
+                    plugin.getName() + "\"", e);
+            }
+        }
+        return methods;
+    }
+
+    /**
+     * Adds resolved hook methods to the hook dispatch table.
+     */
+    private void registerHookMethods(List<HookMethod> methods, Set<String> commands) {
+        for (HookMethod hookMethod : methods) {
+            if (hookMethod.hook == Hook.EXECUTE_COMMAND && commands != null) {
+                for (String command : commands) {
+                    commandHandlers.put(command, hookMethod);
+                }
+            } else {
+                hookMethods.get(hookMethod.hook).add(hookMethod);
+            }
+        }
+        topicHookMethods = createTopicHookMethods();
+    }
+
+    /**
+     * Throws an exception if a command is declared by another plugin already.
+     *
+     * @param   oldPlugin   the plugin to be replaced by the given plugin, or <code>null</code>.
+     *                      Its commands don't count.
+     */
+    private void checkCommands(Plugin plugin, Set<String> commands, Plugin oldPlugin) {
+        if (commands == null) {
+            return;
+        }
+        for (String command : commands) {
+            HookMethod handler = commandHandlers.get(command);
+            if (handler != null && handler.plugin != oldPlugin) {
+                throw new RuntimeException("Command \"" + command + "\" is declared by plugin \"" +
+                    plugin.getId() + "\" as well as by plugin \"" + handler.plugin.getId() + "\"");
+            }
+        }
+    }
+
+    /**
+     * A batch hook counts as overridden if the plugin overrides the batch hook itself or its single-item hook.
+     */
+    private boolean isOverridden(Plugin plugin, Hook hook) throws NoSuchMethodException {
+        Method method = plugin.getClass().getMethod(hook.methodName, hook.paramClasses);
+        if (method.getDeclaringClass() != Plugin.class) {
+            return true;
+        }
+        return hook.itemHook != null && isOverridden(plugin, hook.itemHook);
+    }
+
+    private void unregisterHookMethods(Plugin plugin) {
+        for (List<HookMethod> methods : hookMethods.values()) {
+            for (HookMethod hookMethod : methods) {
+                if (hookMethod.plugin == plugin) {
+                    methods.remove(hookMethod);
+                }
+            }
+        }
+        for (Iterator<HookMethod> i = commandHandlers.values().iterator(); i.hasNext(); ) {
+            if (i.next().plugin == plugin) {
+                i.remove();
+            }
+        }
+        topicHookMethods = createTopicHookMethods();
+    }
+
+    /**
+     * A resolved hook method bound to the plugin which overrides it.
+     */
+    private class HookMethod {
+
+        private Plugin plugin;
+        private Hook hook;
+        private Method method;
+        private MetricTimer timer;      // created lazily, once metrics are enabled
+        private Set<String> topicTypeUris;  // for topic hooks: the types the plugin is interested in. null = all
+        private boolean async;              // invoked after commit, on the async hook dispatcher
+
+        private HookMethod(Plugin plugin, Hook hook, Method method) {
+            this.plugin = plugin;
+            this.hook = hook;
+            this.method = method;
+            if (hook.isTopicHook()) {
+                this.topicTypeUris = plugin.getHookTopicTypeUris();
+            }
+            this.async = hook.isAsyncCapable() && plugin.hasAsyncPostHooks();
+        }
+
+        private boolean handles(String typeUri) {
+            return topicTypeUris == null || topicTypeUris.contains(typeUri);
+        }
+
+        private List<Topic> filterTopics(List<Topic> topics) {
+            List<Topic> filtered = new ArrayList();
+            for (Topic topic : topics) {
+                if (handles(typeUri(topic))) {
+                    filtered.add(topic);
+                }
+            }
+            return filtered.size() == topics.size() ? topics : filtered;
+        }
+
+        /**
+         * @throws  IllegalAccessException
+         * @throws  InvocationTargetException
+         */
+        private Object invoke(Object... params) throws Exception {
+            if (!metrics.isEnabled()) {
+                return method.invoke(plugin, params);
+            }
+            if (timer == null) {
+                timer = metrics.getTimer(plugin.getId() + "." + hook);
+            }
+            long start = System.nanoTime();
+            try {
+                return method.invoke(plugin, params);
+            } finally {
+                timer.record(System.nanoTime() - start);
+            }
+        }
     }
 
     // ---
@@ -0,0 +1,101 @@
+package de.deepamehta.core.impl;
+
+import de.deepamehta.core.model.Metric;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+
+/**
+ * Records the invocations of one instrumented method: the count, the total and maximum latency, and a latency
+ * histogram (see {@link Metric}). Thread-safe and lock-free.
+ */
+public class MetricTimer implements MetricTimerMBean {
+
+    // ------------------------------------------------------------------------------------------------------- Constants
+
+    private static final int BUCKETS = 32;      // the last bucket counts everything from 2^30 microseconds (18 min)
+
+    // ---------------------------------------------------------------------------------------------- Instance Variables
+
+    private final String name;
+
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+    // ---------------------------------------------------------------------------------------------------- Constructors
+
+    MetricTimer(String name) {
+        this.name = name;
+    }
+
+    // -------------------------------------------------------------------------------------------------- Public Methods
+
+    // *** MetricTimerMBean Implementation ***
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public double getMeanMillis() {
+        return snapshot().getMeanMillis();
+    }
+
+    public double getMaxMillis() {
+        return snapshot().getMaxMillis();
+    }
+
+    public double get50thPercentileMillis() {
+        return snapshot().getPercentileMillis(0.5);
+    }
+
+    public double get95thPercentileMillis() {
+        return snapshot().getPercentileMillis(0.95);
+    }
+
+    public double get99thPercentileMillis() {
+        return snapshot().getPercentileMillis(0.99);
+    }
+
+    // ----------------------------------------------------------------------------------------- Package Private Methods
+
+    void record(long nanos) {
+        count.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        long max;
+        while (nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, nanos)) {
+        }
+        histogram.incrementAndGet(bucket(nanos));
+    }
+
+    Metric snapshot() {
+        long[] h = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            h[i] = histogram.get(i);
+        }
+        return new Metric(name, count.get(), totalNanos.get(), maxNanos.get(), h);
+    }
+
+    void reset() {
+        count.set(0);
+        totalNanos.set(0);
+        maxNanos.set(0);
+        for (int i = 0; i < BUCKETS; i++) {
+            histogram.set(i, 0);
+        }
+    }
+
+    String getName() {
+        return name;
+    }
+
+    // ------------------------------------------------------------------------------------------------- Private Methods
+
+    private int bucket(long nanos) {
+        long micros = nanos / 1000;
+        return Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKETS - 1);
+    }
+}
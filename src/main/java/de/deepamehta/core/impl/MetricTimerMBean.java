@@ -0,0 +1,21 @@
+package de.deepamehta.core.impl;
+
+
+
+/**
+ * JMX view of a {@link MetricTimer}.
+ */
+public interface MetricTimerMBean {
+
+    long getCount();
+
+    double getMeanMillis();
+
+    double getMaxMillis();
+
+    double get50thPercentileMillis();
+
+    double get95thPercentileMillis();
+
+    double get99thPercentileMillis();
+}
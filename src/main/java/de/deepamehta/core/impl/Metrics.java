@@ -0,0 +1,202 @@
+package de.deepamehta.core.impl;
+
+import de.deepamehta.core.model.Metric;
+import de.deepamehta.core.service.CoreService;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+
+
+/**
+ * Invocation metrics of the core service methods and the plugin hooks.
+ * <p>
+ * Recording is disabled by default. It is enabled by the system property <code>dm3.metrics.enabled</code> or at
+ * runtime through JMX (MBean <code>de.deepamehta:type=Metrics</code>). When disabled the overhead of an
+ * instrumented call is one volatile read.
+ * <p>
+ * Once the MBeans are registered (see {@link #registerMBeans}) every timer is exposed as MBean
+ * <code>de.deepamehta:type=Metric,name=...</code>.
+ */
+public class Metrics implements MetricsMBean {
+
+    // ------------------------------------------------------------------------------------------------------- Constants
+
+    private static final String DOMAIN = "de.deepamehta";
+
+    // ---------------------------------------------------------------------------------------------- Instance Variables
+
+    private volatile boolean enabled = Boolean.getBoolean("dm3.metrics.enabled");
+
+    private ConcurrentMap<String, MetricTimer> timers = new ConcurrentHashMap();
+    private MBeanServer mbeanServer;    // null if the MBeans are not registered
+
+    private Logger logger = Logger.getLogger(getClass().getName());
+
+    // -------------------------------------------------------------------------------------------------- Public Methods
+
+    // *** MetricsMBean Implementation ***
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        logger.info((enabled ? "Enabling" : "Disabling") + " metrics");
+        this.enabled = enabled;
+    }
+
+    public void reset() {
+        for (MetricTimer timer : timers.values()) {
+            timer.reset();
+        }
+    }
+
+    // ----------------------------------------------------------------------------------------- Package Private Methods
+
+    MetricTimer getTimer(String name) {
+        MetricTimer timer = timers.get(name);
+        if (timer == null) {
+            MetricTimer newTimer = new MetricTimer(name);
+            timer = timers.putIfAbsent(name, newTimer);
+            if (timer == null) {
+                timer = newTimer;
+                registerMBean(timer, timerObjectName(name));
+            }
+        }
+        return timer;
+    }
+
+    /**
+     * Returns a snapshot of all timers, sorted by name.
+     */
+    List<Metric> getSnapshot() {
+        List<Metric> metrics = new ArrayList();
+        for (MetricTimer timer : timers.values()) {
+            metrics.add(timer.snapshot());
+        }
+        Collections.sort(metrics, new Comparator<Metric>() {
+            public int compare(Metric m1, Metric m2) {
+                return m1.getName().compareTo(m2.getName());
+            }
+        });
+        return metrics;
+    }
+
+    /**
+     * Wraps the core service in a proxy which times every method call.
+     */
+    CoreService instrument(final CoreService dms) {
+        final ConcurrentMap<Method, MetricTimer> methodTimers = new ConcurrentHashMap();
+        return (CoreService) Proxy.newProxyInstance(CoreService.class.getClassLoader(),
+            new Class[] {CoreService.class}, new InvocationHandler() {
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    try {
+                        if (!enabled) {
+                            return method.invoke(dms, args);
+                        }
+                        MetricTimer timer = methodTimers.get(method);
+                        if (timer == null) {
+                            timer = getTimer(timerName(method));
+                            methodTimers.put(method, timer);
+                        }
+                        long start = System.nanoTime();
+                        try {
+                            return method.invoke(dms, args);
+                        } finally {
+                            timer.record(System.nanoTime() - start);
+                        }
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                }
+            });
+    }
+
+    // ---
+
+    /**
+     * Registers the control MBean and the timer MBeans on the platform MBean server.
+     */
+    void registerMBeans() {
+        mbeanServer = ManagementFactory.getPlatformMBeanServer();
+        registerMBean(this, objectName("type=Metrics"));
+        for (MetricTimer timer : timers.values()) {
+            registerMBean(timer, timerObjectName(timer.getName()));
+        }
+    }
+
+    void unregisterMBeans() {
+        if (mbeanServer == null) {
+            return;
+        }
+        unregisterMBean(objectName("type=Metrics"));
+        for (MetricTimer timer : timers.values()) {
+            unregisterMBean(timerObjectName(timer.getName()));
+        }
+        mbeanServer = null;
+    }
+
+    // ------------------------------------------------------------------------------------------------- Private Methods
+
+    /**
+     * Note: a failing registration is logged only. Metrics are not worth failing the core service for.
+     */
+    private void registerMBean(Object mbean, ObjectName name) {
+        if (mbeanServer == null) {
+            return;
+        }
+        try {
+            mbeanServer.registerMBean(mbean, name);
+        } catch (Exception e) {
+            logger.warning("MBean \"" + name + "\" can't be registered (" + e + ")");
+        }
+    }
+
+    private void unregisterMBean(ObjectName name) {
+        try {
+            if (mbeanServer.isRegistered(name)) {
+                mbeanServer.unregisterMBean(name);
+            }
+        } catch (Exception e) {
+            logger.warning("MBean \"" + name + "\" can't be unregistered (" + e + ")");
+        }
+    }
+
+    private ObjectName timerObjectName(String name) {
+        return objectName("type=Metric,name=" + ObjectName.quote(name));
+    }
+
+    private ObjectName objectName(String properties) {
+        try {
+            return new ObjectName(DOMAIN + ":" + properties);
+        } catch (Exception e) {
+            throw new RuntimeException("Invalid MBean name \"" + properties + "\"", e);
+        }
+    }
+
+    /**
+     * E.g. "CoreService.getTopic(long, Map)".
+     */
+    private String timerName(Method method) {
+        StringBuilder name = new StringBuilder("CoreService." + method.getName() + "(");
+        Class[] paramTypes = method.getParameterTypes();
+        for (int i = 0; i < paramTypes.length; i++) {
+            name.append(i > 0 ? ", " : "").append(paramTypes[i].getSimpleName());
+        }
+        return name.append(")").toString();
+    }
+}
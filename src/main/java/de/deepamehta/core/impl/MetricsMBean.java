@@ -0,0 +1,18 @@
+package de.deepamehta.core.impl;
+
+
+
+/**
+ * JMX control of the DeepaMehta metrics.
+ */
+public interface MetricsMBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    /**
+     * Resets all recorded metrics.
+     */
+    void reset();
+}
@@ -35,6 +35,7 @@ public class DataField {
     private static final String KEY_VIEWABLE = "viewable";
     private static final String KEY_EDITOR = "editor";
     private static final String KEY_INDEXING_MODE = "indexing_mode";
+    private static final String KEY_UNIQUE = "unique";
     private static final String KEY_JS_RENDERER_CLASS = "js_renderer_class";
 
     private static final Map<String, String> DEFAULT_RENDERERS = new HashMap();
@@ -150,6 +151,10 @@ public class DataField {
         return (String) getProperty(KEY_INDEXING_MODE);
     }
 
+    public Boolean getUnique() {
+        return (Boolean) getProperty(KEY_UNIQUE);
+    }
+
     public String getRendererClass() {
         return (String) getProperty(KEY_JS_RENDERER_CLASS);
     }
@@ -197,6 +202,11 @@ public class DataField {
         setProperty(KEY_INDEXING_MODE, indexingMode);
     }
 
+    // If true no two topics of the same type may have the same value for this data field (default false)
+    public void setUnique(boolean unique) {
+        setProperty(KEY_UNIQUE, unique);
+    }
+
     public void setRendererClass(String rendererClass) {
         setProperty(KEY_JS_RENDERER_CLASS, rendererClass);
     }
@@ -242,6 +252,10 @@ public class DataField {
             setIndexingMode("OFF");
         }
         //
+        if (getUnique() == null) {
+            setUnique(false);
+        }
+        //
         if (getRendererClass() == null) {
             String dataType = getDataType();
             String rendererClass = DEFAULT_RENDERERS.get(dataType);
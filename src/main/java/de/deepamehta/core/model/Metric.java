@@ -0,0 +1,109 @@
+package de.deepamehta.core.model;
+
+import org.codehaus.jettison.json.JSONObject;
+import org.codehaus.jettison.json.JSONException;
+
+
+
+/**
+ * A snapshot of the invocation metrics of one instrumented method: a {@link de.deepamehta.core.service.CoreService}
+ * method or a plugin's hook.
+ * <p>
+ * The latencies are recorded in a histogram with one bucket per power of 2 microseconds. Bucket 0 counts the
+ * invocations below 1 microsecond, bucket n counts the invocations from 2^(n-1) to 2^n microseconds.
+ * Percentiles are reported as the upper bound of the respective bucket.
+ * <p>
+ * Acts as a data transfer object.
+ */
+public class Metric {
+
+    // ---------------------------------------------------------------------------------------------- Instance Variables
+
+    private String name;
+    private long count;
+    private long totalNanos;
+    private long maxNanos;
+    private long[] histogram;
+
+    // ---------------------------------------------------------------------------------------------------- Constructors
+
+    public Metric(String name, long count, long totalNanos, long maxNanos, long[] histogram) {
+        this.name = name;
+        this.count = count;
+        this.totalNanos = totalNanos;
+        this.maxNanos = maxNanos;
+        this.histogram = histogram;
+    }
+
+    // -------------------------------------------------------------------------------------------------- Public Methods
+
+    /**
+     * Returns the name of the instrumented method, e.g. "CoreService.getTopic(long, Map)" or
+     * "de.deepamehta.3-workspaces.ENRICH_TOPIC" (plugin ID and hook).
+     */
+    public String getName() {
+        return name;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getTotalMillis() {
+        return totalNanos / 1000000.0;
+    }
+
+    public double getMeanMillis() {
+        return count > 0 ? getTotalMillis() / count : 0;
+    }
+
+    public double getMaxMillis() {
+        return maxNanos / 1000000.0;
+    }
+
+    /**
+     * @param   percentile  e.g. 0.95
+     */
+    public double getPercentileMillis(double percentile) {
+        long rank = (long) Math.ceil(percentile * count);
+        long n = 0;
+        for (int i = 0; i < histogram.length; i++) {
+            n += histogram[i];
+            if (n >= rank && n > 0) {
+                return (1L << i) / 1000.0;
+            }
+        }
+        return getMaxMillis();
+    }
+
+    public long[] getHistogram() {
+        return histogram;
+    }
+
+    // ---
+
+    public JSONObject toJSON() {
+        try {
+            JSONObject o = new JSONObject();
+            o.put("name", name);
+            o.put("count", count);
+            o.put("total_ms", getTotalMillis());
+            o.put("mean_ms", getMeanMillis());
+            o.put("max_ms", getMaxMillis());
+            o.put("p50_ms", getPercentileMillis(0.5));
+            o.put("p95_ms", getPercentileMillis(0.95));
+            o.put("p99_ms", getPercentileMillis(0.99));
+            return o;
+        } catch (JSONException e) {
+            throw new RuntimeException("Error while serializing " + this, e);
+        }
+    }
+
+    // ---
+
+    @Override
+    public String toString() {
+        return "metric \"" + name + "\" (count=" + count + ", mean=" + getMeanMillis() + "ms, max=" +
+            getMaxMillis() + "ms)";
+    }
+}
@@ -13,6 +13,7 @@ public class RelatedTopic {
 
     private Topic topic;
     private Relation relation;
+    private int depth = 1;      // number of relations between the start topic and this topic
 
     // ---------------------------------------------------------------------------------------------------- Constructors
 
@@ -34,6 +35,14 @@ public class RelatedTopic {
         return relation;
     }
 
+    /**
+     * Returns the distance between the start topic and this topic, counted in relations.
+     * The relation returned by {@link #getRelation} is the last one on the path.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
     // ---
 
     public void setTopic(Topic topic) {
@@ -43,4 +52,8 @@ public class RelatedTopic {
     public void setRelation(Relation relation) {
         this.relation = relation;
     }
+
+    public void setDepth(int depth) {
+        this.depth = depth;
+    }
 }
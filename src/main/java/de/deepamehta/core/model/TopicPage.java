@@ -0,0 +1,64 @@
+package de.deepamehta.core.model;
+
+import de.deepamehta.core.util.JSONHelper;
+
+import org.codehaus.jettison.json.JSONObject;
+import org.codehaus.jettison.json.JSONException;
+
+import java.util.List;
+
+
+
+/**
+ * A page of a (potentially huge) topic listing, along with a cursor to retrieve the next page.
+ * <p>
+ * Acts as a data transfer object.
+ */
+public class TopicPage {
+
+    // ---------------------------------------------------------------------------------------------- Instance Variables
+
+    private List<Topic> topics;
+    private String cursor;
+
+    // ---------------------------------------------------------------------------------------------------- Constructors
+
+    public TopicPage(List<Topic> topics, String cursor) {
+        this.topics = topics;
+        this.cursor = cursor;
+    }
+
+    // -------------------------------------------------------------------------------------------------- Public Methods
+
+    public List<Topic> getTopics() {
+        return topics;
+    }
+
+    /**
+     * Returns the continuation token to be passed in order to retrieve the next page,
+     * or <code>null</code> if this is the last page.
+     */
+    public String getCursor() {
+        return cursor;
+    }
+
+    // ---
+
+    public JSONObject toJSON() {
+        try {
+            JSONObject o = new JSONObject();
+            o.put("topics", JSONHelper.topicsToJson(topics));
+            o.put("cursor", cursor);
+            return o;
+        } catch (JSONException e) {
+            throw new RuntimeException("Error while serializing " + this, e);
+        }
+    }
+
+    // ---
+
+    @Override
+    public String toString() {
+        return "topic page (" + topics.size() + " topics, cursor=" + cursor + ")";
+    }
+}
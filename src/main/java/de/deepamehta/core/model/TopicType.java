@@ -5,7 +5,9 @@ import org.codehaus.jettison.json.JSONArray;
 import org.codehaus.jettison.json.JSONException;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
@@ -24,7 +26,10 @@ public class TopicType extends Topic {
 
     // ---------------------------------------------------------------------------------------------- Instance Variables
 
-    protected List<DataField> dataFields;
+    protected volatile List<DataField> dataFields;
+    // Data field URI -> data field, in data field order. Allows constant-time lookup by URI.
+    // Note: never modified in place but replaced, along with the data field list (see setDataFields()).
+    private volatile Map<String, DataField> dataFieldIndex = Collections.emptyMap();
 
     private Logger logger = Logger.getLogger(getClass().getName());
 
@@ -33,7 +38,9 @@ public class TopicType extends Topic {
     public TopicType(Map properties, List dataFields) {
         // id and label remain uninitialized
         super(-1, "de/deepamehta/core/topictype/TopicType", null, properties);  // label=null
-        this.dataFields = dataFields;
+        if (dataFields != null) {
+            setDataFields(dataFields);
+        }
     }
 
     public TopicType(JSONObject type) {
@@ -51,7 +58,7 @@ public class TopicType extends Topic {
             }
             setProperty("js_renderer_class", type.getString("js_renderer_class"));
             // initialize data fields
-            dataFields = new ArrayList();
+            setDataFields(new ArrayList());
             JSONArray fieldDefs = type.getJSONArray("fields");
             for (int i = 0; i < fieldDefs.length(); i++) {
                 addDataField(new DataField(fieldDefs.getJSONObject(i)));
@@ -117,36 +124,46 @@ public class TopicType extends Topic {
     }
 
     public DataField getDataField(String uri) {
-        for (DataField dataField : dataFields) {
-            if (dataField.getUri().equals(uri)) {
-                return dataField;
-            }
+        DataField dataField = dataFieldIndex.get(uri);
+        if (dataField == null) {
+            throw new RuntimeException("Topic type \"" + getProperty("de/deepamehta/core/property/TypeLabel") +
+                "\" has no data field \"" + uri + "\"");
         }
-        throw new RuntimeException("Topic type \"" + getProperty("de/deepamehta/core/property/TypeLabel") +
-            "\" has no data field \"" + uri + "\"");
+        return dataField;
     }
 
     public boolean hasDataField(String uri) {
-        for (DataField dataField : dataFields) {
-            if (dataField.getUri().equals(uri)) {
-                return true;
-            }
-        }
-        return false;
+        return dataFieldIndex.containsKey(uri);
     }
 
     // ---
 
+    // Note: the data field list is never modified in place but replaced (copy-on-write). So, a thread iterating
+    // the data fields while another thread changes them sees a consistent list.
+
     public void addDataField(DataField dataField) {
+        List<DataField> dataFields = new ArrayList(this.dataFields);
         dataFields.add(dataField);
+        setDataFields(dataFields);
+    }
+
+    /**
+     * Replaces the data field which has the same URI as the given one.
+     */
+    public void updateDataField(DataField dataField) {
+        List<DataField> dataFields = new ArrayList(this.dataFields);
+        dataFields.set(dataFields.indexOf(getDataField(dataField.getUri())), dataField);
+        setDataFields(dataFields);
     }
 
     public void removeDataField(String uri) {
         try {
+            List<DataField> dataFields = new ArrayList(this.dataFields);
             boolean removed = dataFields.remove(getDataField(uri));
             if (!removed) {
                 throw new RuntimeException("List.remove() returned false");
             }
+            setDataFields(dataFields);
         } catch (Throwable e) {
             throw new RuntimeException("Data field \"" + uri + "\" can't be removed", e);
         }
@@ -165,6 +182,21 @@ public class TopicType extends Topic {
             reorderedDataFields.add(getDataField(uri));
         }
         //
-        dataFields = reorderedDataFields;
+        setDataFields(reorderedDataFields);
+    }
+
+    // ----------------------------------------------------------------------------------------------- Protected Methods
+
+    /**
+     * Replaces the data fields and rebuilds the data field index.
+     */
+    protected void setDataFields(List<DataField> dataFields) {
+        Map<String, DataField> dataFieldIndex = new LinkedHashMap();
+        for (DataField dataField : dataFields) {
+            dataFieldIndex.put(dataField.getUri(), dataField);
+        }
+        // Note: the index is replaced first. So, a thread seeing the new data fields sees the new index as well.
+        this.dataFieldIndex = dataFieldIndex;
+        this.dataFields = dataFields;
     }
 }
@@ -0,0 +1,162 @@
+package de.deepamehta.core.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+
+/**
+ * Describes a traversal of the topic graph, starting at a given topic: how deep to go, which relations and topics
+ * to follow at which depth, and how many related topics to return at most.
+ * <p>
+ * Acts as a data transfer object.
+ */
+public class TraversalDefinition {
+
+    // ---------------------------------------------------------------------------------------------- Instance Variables
+
+    private int maxDepth;
+    private int maxResults;                     // 0 means unlimited
+    private Uniqueness uniqueness = Uniqueness.NODE_GLOBAL;
+
+    private Filter defaultFilter = new Filter(null, null, null);
+    private Map<Integer, Filter> depthFilters = new HashMap();
+
+    public enum Uniqueness {
+
+        /** Every topic is returned at most once, at the depth it is reached first. */
+        NODE_GLOBAL,
+        /** A topic is not visited twice on the same path, but is returned once for every path it is reached by. */
+        NODE_PATH,
+        /** Every relation is traversed at most once. */
+        RELATIONSHIP_GLOBAL,
+        /** A relation is not traversed twice on the same path. */
+        RELATIONSHIP_PATH
+    }
+
+    // ---------------------------------------------------------------------------------------------------- Constructors
+
+    /**
+     * @param   maxDepth    The maximum number of relations between the start topic and a related topic.
+     *                      1 retrieves the directly related topics only.
+     */
+    public TraversalDefinition(int maxDepth) {
+        if (maxDepth < 1) {
+            throw new IllegalArgumentException("maxDepth must be at least 1 (maxDepth=" + maxDepth + ")");
+        }
+        this.maxDepth = maxDepth;
+    }
+
+    // -------------------------------------------------------------------------------------------------- Public Methods
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public int getMaxResults() {
+        return maxResults;
+    }
+
+    public Uniqueness getUniqueness() {
+        return uniqueness;
+    }
+
+    /**
+     * Returns the filter which applies to the given depth.
+     */
+    public Filter getFilter(int depth) {
+        Filter filter = depthFilters.get(depth);
+        return filter != null ? filter : defaultFilter;
+    }
+
+    // ---
+
+    /**
+     * @param   maxResults  The maximum number of related topics to return. 0 means unlimited.
+     *                      Topics at lower depth are returned first.
+     */
+    public void setMaxResults(int maxResults) {
+        this.maxResults = maxResults;
+    }
+
+    public void setUniqueness(Uniqueness uniqueness) {
+        this.uniqueness = uniqueness;
+    }
+
+    /**
+     * Sets the filter which applies to all depths for which no specific filter is set.
+     * For the filter arguments see {@link Filter#Filter}.
+     */
+    public void setFilter(List<String> includeTopicTypes, List<String> includeRelTypes,
+                                                          List<String> excludeRelTypes) {
+        defaultFilter = new Filter(includeTopicTypes, includeRelTypes, excludeRelTypes);
+    }
+
+    /**
+     * Sets the filter which applies to the given depth. At depth n the filter is applied to the n-th relation of
+     * the path and the topic it leads to. The traversal does not continue beyond topics which are filtered out.
+     * For the filter arguments see {@link Filter#Filter}.
+     */
+    public void setFilter(int depth, List<String> includeTopicTypes, List<String> includeRelTypes,
+                                                                     List<String> excludeRelTypes) {
+        depthFilters.put(depth, new Filter(includeTopicTypes, includeRelTypes, excludeRelTypes));
+    }
+
+    // ---
+
+    @Override
+    public String toString() {
+        return "traversal (maxDepth=" + maxDepth + ", maxResults=" + maxResults + ", uniqueness=" + uniqueness + ")";
+    }
+
+    // ---
+
+    /**
+     * A topic type filter and a relation type filter, as known from
+     * {@link de.deepamehta.core.service.CoreService#getRelatedTopics}.
+     */
+    public static class Filter {
+
+        private List<String> includeTopicTypes;
+        private List<String> includeRelTypes;
+        private List<String> excludeRelTypes;
+
+        /**
+         * @param   includeTopicTypes   The include topic type filter (optional).
+         *                              A list of topic type URIs (strings), e.g. "de/deepamehta/core/topictype/Note".
+         *                              Null or an empty list switches the filter off.
+         * @param   includeRelTypes     The include relation type filter (optional).
+         *                              A list of strings of the form "<relTypeName>[;<direction>]",
+         *                              e.g. "TOPICMAP_TOPIC;INCOMING".
+         *                              Null or an empty list switches the filter off.
+         * @param   excludeRelTypes     The exclude relation type filter (optional).
+         *                              A list of strings of the form "<relTypeName>[;<direction>]",
+         *                              e.g. "SEARCH_RESULT;OUTGOING".
+         *                              Null or an empty list switches the filter off.
+         */
+        public Filter(List<String> includeTopicTypes, List<String> includeRelTypes, List<String> excludeRelTypes) {
+            this.includeTopicTypes = includeTopicTypes != null ? includeTopicTypes : new ArrayList();
+            this.includeRelTypes   = includeRelTypes   != null ? includeRelTypes   : new ArrayList();
+            this.excludeRelTypes   = excludeRelTypes   != null ? excludeRelTypes   : new ArrayList();
+            // error check
+            if (!this.includeRelTypes.isEmpty() && !this.excludeRelTypes.isEmpty()) {
+                throw new IllegalArgumentException("includeRelTypes and excludeRelTypes can not be used " +
+                    "at the same time");
+            }
+        }
+
+        public List<String> getIncludeTopicTypes() {
+            return includeTopicTypes;
+        }
+
+        public List<String> getIncludeRelTypes() {
+            return includeRelTypes;
+        }
+
+        public List<String> getExcludeRelTypes() {
+            return excludeRelTypes;
+        }
+    }
+}
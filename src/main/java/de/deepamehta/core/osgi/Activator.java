@@ -39,7 +39,7 @@ public class Activator implements BundleActivator, FrameworkListener {
     public void start(BundleContext context) {
         try {
             logger.info("========== Starting bundle \"DeepaMehta 3 Core\" ==========");
-            dms = new EmbeddedService();
+            dms = new EmbeddedService().getInstrumentedService();
             //
             logger.info("Registering DeepaMehta core service");
             context.registerService(CoreService.class.getName(), dms, null);
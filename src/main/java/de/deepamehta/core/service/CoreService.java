@@ -1,8 +1,11 @@
 package de.deepamehta.core.service;
 
 import de.deepamehta.core.model.DataField;
+import de.deepamehta.core.model.Metric;
 import de.deepamehta.core.model.Topic;
+import de.deepamehta.core.model.TopicPage;
 import de.deepamehta.core.model.TopicType;
+import de.deepamehta.core.model.TraversalDefinition;
 import de.deepamehta.core.model.RelatedTopic;
 import de.deepamehta.core.model.Relation;
 import de.deepamehta.core.storage.Transaction;
@@ -10,6 +13,7 @@ import de.deepamehta.core.storage.Transaction;
 import org.codehaus.jettison.json.JSONObject;
 
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -36,6 +40,14 @@ public interface CoreService {
 
     public Topic getTopic(long id, Map clientContext);
 
+    /**
+     * Retrieves a topic with only the given properties. Use this method instead of {@link #getTopic(long, Map)}
+     * when just a few (small) properties are needed.
+     *
+     * @param   fieldUris   The URIs of the properties to fetch. Properties the topic doesn't have are skipped.
+     */
+    public Topic getTopic(long id, Set<String> fieldUris, Map clientContext);
+
     /**
      * Looks up a single topic by exact property value.
      * If no such topic exists <code>null</code> is returned.
@@ -49,12 +61,63 @@ public interface CoreService {
      */
     public Topic getTopic(String key, Object value);
 
+    /**
+     * Looks up a single topic of the given type by exact property value.
+     * If no such topic exists <code>null</code> is returned.
+     * If more than one topic is found a runtime exception is thrown.
+     * <p>
+     * The property must be indexed (any indexing mode except <code>OFF</code>) or be declared unique
+     * (see {@link DataField#setUnique}).
+     */
     public Topic getTopic(String typeUri, String key, Object value);
 
     public Object getTopicProperty(long topicId, String key);
 
+    /**
+     * Retrieves several topics at once, in one transaction. Duplicate IDs are ignored, that is every topic is
+     * returned once, in order of its first occurrence. Use this method e.g. to load all topics of a topicmap.
+     * <p>
+     * The topics are enriched by the plugins (see enrichTopicsHook()).
+     *
+     * @param   includeProperties   if true, the topic properties are fetched. If false, it is up to the plugins to
+     *                              initialize the properties they need (see providePropertiesHook()).
+     */
+    public List<Topic> getTopics(long[] ids, boolean includeProperties, Map clientContext);
+
     public List<Topic> getTopics(String typeUri);
 
+    /**
+     * Retrieves the topics of a type with the given properties.
+     * Plugins may initialize further properties (see providePropertiesHook()).
+     *
+     * @param   fieldUris   The URIs of the properties to fetch. Properties a topic doesn't have are skipped.
+     */
+    public List<Topic> getTopics(String typeUri, Set<String> fieldUris);
+
+    /**
+     * Retrieves the topics of a type page by page. Use this method instead of {@link #getTopics(String)} for types
+     * with many instances.
+     * <p>
+     * IMPORTANT: the topics returned by this method provide no properties.
+     * To initialize the properties needed by your plugin define its providePropertiesHook().
+     *
+     * @param   limit   The maximum number of topics to return. Must be positive.
+     * @param   cursor  The continuation token as returned along with the previous page ({@link TopicPage#getCursor}),
+     *                  or <code>null</code> to retrieve the first page.
+     */
+    public TopicPage getTopics(String typeUri, int limit, String cursor);
+
+    /**
+     * Returns an iterator over the topics of a type. The topics are retrieved lazily, page by page, each page in a
+     * transaction of its own. So, all topics of a type can be walked through with constant memory.
+     * <p>
+     * IMPORTANT: the topics returned by this method provide no properties.
+     * To initialize the properties needed by your plugin define its providePropertiesHook().
+     *
+     * @param   pageSize    The number of topics retrieved at once. Must be positive.
+     */
+    public Iterator<Topic> getTopicIterator(String typeUri, int pageSize);
+
     /**
      * Looks up topics by exact property value.
      * If no such topics exists an empty list is returned.
@@ -94,7 +157,32 @@ public interface CoreService {
                                                              List<String> excludeRelTypes);
 
     /**
-     * Performs a fulltext search.
+     * Like {@link #getRelatedTopics(long, List, List, List)}, but the topics come with the given properties.
+     * Plugins may initialize further properties (see providePropertiesHook()).
+     *
+     * @param   fieldUris   The URIs of the topic properties to fetch. Properties a topic doesn't have are skipped.
+     */
+    public List<RelatedTopic> getRelatedTopics(long topicId, List<String> includeTopicTypes,
+                                                             List<String> includeRelTypes,
+                                                             List<String> excludeRelTypes, Set<String> fieldUris);
+
+    /**
+     * Retrieves the topics within a neighbourhood of the given topic. The whole neighbourhood is retrieved
+     * by one server-side traversal, breadth first, that is topics at lower depth are returned first.
+     * <p>
+     * IMPORTANT: the topics and relations returned by this method provide no properties.
+     * To initialize the properties needed by your plugin define its providePropertiesHook().
+     *
+     * @param   traversal   The maximum depth, the filters to apply per depth, the uniqueness mode, and the maximum
+     *                      number of results.
+     *
+     * @return  The related topics, each one as a pair: the topic, and the relation by which the traversal reached
+     *          the topic. The depth at which a topic was reached is available via {@link RelatedTopic#getDepth}.
+     */
+    public List<RelatedTopic> getRelatedTopics(long topicId, TraversalDefinition traversal);
+
+    /**
+     * Performs a fulltext search. The search term is taken literally, Lucene query syntax is not interpreted.
      *
      * @param   fieldUri    The URI of the data field to search. If null is provided all fields are searched.
      * @param   wholeWord   If true the searchTerm is regarded as whole word.
@@ -102,16 +190,107 @@ public interface CoreService {
      */
     public List<Topic> searchTopics(String searchTerm, String fieldUri, boolean wholeWord, Map clientContext);
 
+    /**
+     * Like {@link #searchTopics(String, String, boolean, Map)}, but the found topics come with the given properties.
+     *
+     * @param   fieldUris   The URIs of the properties to fetch. Properties a topic doesn't have are skipped.
+     */
+    public List<Topic> searchTopics(String searchTerm, String fieldUri, boolean wholeWord, Set<String> fieldUris,
+                                                                                           Map clientContext);
+
+    /**
+     * Performs a fulltext search, restricted to topics of the given types. The search result is paged:
+     * only <code>maxResults</code> topics are retrieved, regardless of how many topics match.
+     *
+     * @param   topicTypeUris   The URIs of the topic types to search (optional).
+     *                          If null or an empty list is provided all types are searched.
+     * @param   maxResults      The maximum number of topics to return. 0 means unlimited.
+     * @param   offset          The number of found topics to skip. Use it to fetch the subsequent pages.
+     */
+    public List<Topic> searchTopics(String searchTerm, String fieldUri, boolean wholeWord, List<String> topicTypeUris,
+                                                                       int maxResults, int offset, Map clientContext);
+
+    // ---
+
+    /**
+     * Returns the number of topics of the given type. Cheaper than <code>getTopics(typeUri).size()</code>
+     * as no topic is retrieved.
+     */
+    public int countTopics(String typeUri);
+
+    /**
+     * Returns the number of topics with the given property value.
+     * Like {@link #getTopics(String, Object)} this requires the property to be indexed with mode <code>KEY</code>.
+     */
+    public int countTopics(String key, Object value);
+
+    /**
+     * Returns the number of topics {@link #getRelatedTopics(long, List, List, List)} would retrieve.
+     * For the filter arguments see there.
+     */
+    public int countRelatedTopics(long topicId, List<String> includeTopicTypes, List<String> includeRelTypes,
+                                                                                List<String> excludeRelTypes);
+
+    /**
+     * Returns the total number of topics a search would find, e.g. to display the number of pages of a paged search
+     * (see {@link #searchTopics(String, String, boolean, List, int, int, Map)}).
+     */
+    public int countSearchResults(String searchTerm, String fieldUri, boolean wholeWord, List<String> topicTypeUris);
+
     public Topic createTopic(String typeUri, Map properties, Map clientContext);
 
+    /**
+     * Creates many topics of the same type. The topics are created in chunks of 1000, each chunk in its own
+     * transaction (unless the caller's transaction is running already). The type is resolved only once, and the
+     * hooks are triggered once per chunk in their batch form (see {@link Plugin#preCreateTopicsHook},
+     * {@link Plugin#postCreateTopicsHook}, {@link Plugin#enrichTopicsHook}).
+     * <p>
+     * If a chunk fails the topics of the preceding chunks remain created.
+     *
+     * @param   properties  The properties of the topics to create, one map per topic.
+     *
+     * @return  The created topics, in the order of <code>properties</code>.
+     */
+    public List<Topic> createTopics(String typeUri, List<Map> properties, Map clientContext);
+
+    /**
+     * Like {@link #createTopics(String, List, Map)}, but with a custom chunk size.
+     *
+     * @param   chunkSize   The number of topics created per transaction.
+     */
+    public List<Topic> createTopics(String typeUri, List<Map> properties, int chunkSize, Map clientContext);
+
     public void setTopicProperties(long id, Map properties);
 
     public void deleteTopic(long id);
 
+    /**
+     * Deletes topics along with their relations. The topics are deleted in chunks, each chunk in its own transaction
+     * (unless the caller's transaction is running already). A chunk takes as many topics as have 1000 relations in
+     * total, and deletes them together with their relations. The relation delete hooks are triggered in their batch
+     * form, once per chunk (see {@link Plugin#preDeleteRelationsHook}, {@link Plugin#postDeleteRelationsHook}).
+     * <p>
+     * A topic with more than 1000 relations gets its relations deleted in chunks of 1000 before the topic itself is
+     * deleted. If a chunk fails the relations and topics of the preceding chunks remain deleted.
+     */
+    public void deleteTopics(long[] ids);
+
+    /**
+     * Deletes all topics of the given type along with their relations. See {@link #deleteTopics}.
+     * The type itself is not deleted.
+     */
+    public void deleteTopicsByType(String typeUri);
+
     // === Relations ===
 
     public Relation getRelation(long id);
 
+    /**
+     * Retrieves several relations at once, in one transaction, including their properties. Duplicate IDs are
+     * ignored, that is every relation is returned once, in order of its first occurrence.
+     */
+    public List<Relation> getRelations(long[] ids);
+
     /**
      * Returns the relation between two topics. If no such relation exists null is returned.
      * If more than one relation exists, an exception is thrown.
@@ -133,6 +312,21 @@ public interface CoreService {
 
     public Relation createRelation(String typeId, long srcTopicId, long dstTopicId, Map properties);
 
+    /**
+     * Creates many relations. The relations are created in chunks of 1000, each chunk in its own transaction.
+     * The IDs of the given relations are ignored.
+     *
+     * @return  The created relations, in the order of <code>relations</code>.
+     */
+    public List<Relation> createRelations(List<Relation> relations);
+
+    /**
+     * Like {@link #createRelations(List)}, but with a custom chunk size.
+     *
+     * @param   chunkSize   The number of relations created per transaction.
+     */
+    public List<Relation> createRelations(List<Relation> relations, int chunkSize);
+
     public void setRelationProperties(long id, Map properties);
 
     public void deleteRelation(long id);
@@ -147,6 +341,10 @@ public interface CoreService {
 
     public void addDataField(String typeUri, DataField dataField);
 
+    /**
+     * Updates a data field. If its indexing mode or uniqueness changes the existing values are re-indexed. If the
+     * data field becomes unique while 2 topics have the same value the data field is not updated.
+     */
     public void updateDataField(String typeUri, DataField dataField);
 
     public void removeDataField(String typeUri, String fieldUri);
@@ -176,4 +374,11 @@ public interface CoreService {
     public void shutdown();
 
     public Transaction beginTx();
+
+    /**
+     * Returns a snapshot of the invocation metrics of the core service methods and the plugin hooks, sorted by name.
+     * Metrics are recorded only while enabled, by the system property <code>dm3.metrics.enabled</code> or through
+     * JMX (MBean <code>de.deepamehta:type=Metrics</code>).
+     */
+    public List<Metric> getMetrics();
 }
@@ -21,9 +21,12 @@ import org.codehaus.jettison.json.JSONObject;
 import java.util.ArrayList;
 import java.util.Dictionary;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.logging.Logger;
 
 import java.io.InputStream;
@@ -81,6 +84,46 @@ public class Plugin implements BundleActivator {
         return getConfigProperty(key, null);
     }
 
+    /**
+     * Returns the URIs of the topic types this plugin's topic hooks are interested in, as declared by the
+     * "hookTopicTypes" config property (comma-separated). The core triggers the topic hooks (e.g.
+     * {@link #postCreateHook}, {@link #enrichTopicHook}, {@link #modifyTopicTypeHook}) only for topics (resp. topic
+     * types) of these types.
+     *
+     * @return  the topic type URIs, or <code>null</code> if the property is not set. In this case the topic hooks
+     *          are triggered for topics of any type.
+     */
+    public Set<String> getHookTopicTypeUris() {
+        return getConfigPropertySet("hookTopicTypes");
+    }
+
+    /**
+     * Returns the commands this plugin handles by its {@link #executeCommandHook}, as declared by the "commands"
+     * config property (comma-separated). The core dispatches a command directly to the plugin which declares it.
+     *
+     * @return  the command names, or <code>null</code> if the property is not set. In this case the plugin's
+     *          {@link #executeCommandHook} is consulted for every command which is not declared by any plugin.
+     */
+    public Set<String> getCommands() {
+        return getConfigPropertySet("commands");
+    }
+
+    /**
+     * Returns whether this plugin receives its post hooks asynchronously, as declared by the "asyncPostHooks"
+     * config property. Concerned are {@link #postCreateHook}, {@link #postUpdateHook},
+     * {@link #postDeleteRelationHook}, and their batch variants.
+     * <p>
+     * Asynchronous post hooks are triggered only once the writing transaction is committed, and run on a worker
+     * thread in a transaction of their own. They can't affect (or veto) the write. The events of one topic (resp.
+     * relation) are delivered in order. The hooks get copies of the topics, taken when the hook is triggered.
+     *
+     * @return  <code>false</code> if the property is not set. In this case the post hooks run synchronously,
+     *          within the writing transaction.
+     */
+    public boolean hasAsyncPostHooks() {
+        return configProperties != null && Boolean.valueOf(configProperties.getProperty("asyncPostHooks"));
+    }
+
     /**
      * Uses the plugin bundle's class loader to load a class by name.
      *
@@ -204,6 +247,30 @@ public class Plugin implements BundleActivator {
     public void postUpdateHook(Topic topic, Map<String, Object> oldProperties) {
     }
 
+    /**
+     * Batch variant of {@link #preCreateHook}. Triggered by {@link CoreService#createTopics} once per chunk.
+     * <p>
+     * Override this hook to process all the topics in one go.
+     * The default implementation triggers {@link #preCreateHook} for each topic.
+     */
+    public void preCreateTopicsHook(List<Topic> topics, Map<String, String> clientContext) {
+        for (Topic topic : topics) {
+            preCreateHook(topic, clientContext);
+        }
+    }
+
+    /**
+     * Batch variant of {@link #postCreateHook}. Triggered by {@link CoreService#createTopics} once per chunk.
+     * <p>
+     * Override this hook to process all the topics in one go.
+     * The default implementation triggers {@link #postCreateHook} for each topic.
+     */
+    public void postCreateTopicsHook(List<Topic> topics, Map<String, String> clientContext) {
+        for (Topic topic : topics) {
+            postCreateHook(topic, clientContext);
+        }
+    }
+
     // ---
 
     public void preDeleteRelationHook(long relationId) {
@@ -212,6 +279,32 @@ public class Plugin implements BundleActivator {
     public void postDeleteRelationHook(long relationId) {
     }
 
+    /**
+     * Batch variant of {@link #preDeleteRelationHook}. Triggered when a topic is deleted along with its relations
+     * (see {@link CoreService#deleteTopics}), once per chunk of relations.
+     * <p>
+     * Override this hook to process all the relations in one go.
+     * The default implementation triggers {@link #preDeleteRelationHook} for each relation.
+     */
+    public void preDeleteRelationsHook(List<Long> relationIds) {
+        for (long relationId : relationIds) {
+            preDeleteRelationHook(relationId);
+        }
+    }
+
+    /**
+     * Batch variant of {@link #postDeleteRelationHook}. Triggered when a topic is deleted along with its relations
+     * (see {@link CoreService#deleteTopics}), once per chunk of relations.
+     * <p>
+     * Override this hook to process all the relations in one go.
+     * The default implementation triggers {@link #postDeleteRelationHook} for each relation.
+     */
+    public void postDeleteRelationsHook(List<Long> relationIds) {
+        for (long relationId : relationIds) {
+            postDeleteRelationHook(relationId);
+        }
+    }
+
     // ---
 
     public void providePropertiesHook(Topic topic) {
@@ -220,11 +313,50 @@ public class Plugin implements BundleActivator {
     public void providePropertiesHook(Relation relation) {
     }
 
+    /**
+     * Batch variant of {@link #providePropertiesHook(Topic)}. Triggered for list results, e.g. by
+     * {@link CoreService#getTopics(String)} and {@link CoreService#getRelatedTopics}.
+     * <p>
+     * Override this hook to initialize the properties of all the topics in one go.
+     * The default implementation triggers {@link #providePropertiesHook(Topic)} for each topic.
+     */
+    public void provideTopicPropertiesHook(List<Topic> topics) {
+        for (Topic topic : topics) {
+            providePropertiesHook(topic);
+        }
+    }
+
+    /**
+     * Batch variant of {@link #providePropertiesHook(Relation)}. Triggered for list results, e.g. by
+     * {@link CoreService#getRelatedTopics}.
+     * <p>
+     * Override this hook to initialize the properties of all the relations in one go.
+     * The default implementation triggers {@link #providePropertiesHook(Relation)} for each relation.
+     */
+    public void provideRelationPropertiesHook(List<Relation> relations) {
+        for (Relation relation : relations) {
+            providePropertiesHook(relation);
+        }
+    }
+
     // ---
 
     public void enrichTopicHook(Topic topic, Map<String, String> clientContext) {
     }
 
+    /**
+     * Batch variant of {@link #enrichTopicHook}. Triggered when several topics are retrieved at once
+     * (see {@link CoreService#getTopics(long[], boolean, Map)}).
+     * <p>
+     * Override this hook to enrich all the topics in one go.
+     * The default implementation triggers {@link #enrichTopicHook} for each topic.
+     */
+    public void enrichTopicsHook(List<Topic> topics, Map<String, String> clientContext) {
+        for (Topic topic : topics) {
+            enrichTopicHook(topic, clientContext);
+        }
+    }
+
     public void enrichTopicTypeHook(TopicType topicType, Map<String, String> clientContext) {
     }
 
@@ -407,6 +539,23 @@ public class Plugin implements BundleActivator {
         return configProperties.getProperty(key, defaultValue);
     }
 
+    /**
+     * @return  the comma-separated values of a config property, or <code>null</code> if the property is not set.
+     */
+    private Set<String> getConfigPropertySet(String key) {
+        String value = configProperties != null ? configProperties.getProperty(key) : null;
+        if (value == null) {
+            return null;
+        }
+        Set<String> values = new HashSet();
+        for (String v : value.split(",")) {
+            if (v.trim().length() > 0) {
+                values.add(v.trim());
+            }
+        }
+        return values;
+    }
+
     // ---
 
     private void initPlugin() {
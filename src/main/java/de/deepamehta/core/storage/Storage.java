@@ -4,7 +4,9 @@ import de.deepamehta.core.model.DataField;
 import de.deepamehta.core.model.RelatedTopic;
 import de.deepamehta.core.model.Relation;
 import de.deepamehta.core.model.Topic;
+import de.deepamehta.core.model.TopicPage;
 import de.deepamehta.core.model.TopicType;
+import de.deepamehta.core.model.TraversalDefinition;
 
 import java.util.Map;
 import java.util.List;
@@ -21,6 +23,13 @@ public interface Storage {
 
     public Topic getTopic(long id);
 
+    /**
+     * Retrieves a topic with only the given properties.
+     *
+     * @param   fieldUris   the URIs of the properties to fetch.
+     */
+    public Topic getTopic(long id, Set<String> fieldUris);
+
     /**
      * Looks up a single topic by exact property value.
      * If no such topic exists <code>null</code> is returned.
@@ -34,6 +43,14 @@ public interface Storage {
      */
     public Topic getTopic(String key, Object value);
 
+    /**
+     * Looks up a single topic of the given type by exact property value.
+     * If no such topic exists <code>null</code> is returned.
+     * If more than one topic is found a runtime exception is thrown.
+     * <p>
+     * The property must be indexed (any indexing mode except <code>OFF</code>) or be declared unique
+     * (see {@link DataField#setUnique}).
+     */
     public Topic getTopic(String typeUri, String key, Object value);
 
     /**
@@ -43,6 +60,34 @@ public interface Storage {
 
     public List<Topic> getTopics(String typeUri);
 
+    /**
+     * Retrieves the topics of a type with only the given properties.
+     *
+     * @param   fieldUris   the URIs of the properties to fetch.
+     */
+    public List<Topic> getTopics(String typeUri, Set<String> fieldUris);
+
+    /**
+     * Retrieves several topics at once. Duplicate IDs are ignored, that is every topic is returned once,
+     * in order of its first occurrence.
+     *
+     * @param   includeProperties   if true, the topic properties are fetched.
+     */
+    public List<Topic> getTopics(long[] ids, boolean includeProperties);
+
+    /**
+     * Returns a page of the topics of a type. The topic properties remain uninitialized.
+     * <p>
+     * The topics are returned in order of their IDs. The cursor refers to the last topic of the previous page. So,
+     * pages are not shifted when topics are created or deleted while walking through the pages, even if the cursor's
+     * topic is deleted. No state is kept between pages.
+     *
+     * @param   limit   The maximum number of topics to return.
+     * @param   cursor  The continuation token as returned along with the previous page,
+     *                  or <code>null</code> to retrieve the first page.
+     */
+    public TopicPage getTopics(String typeUri, int limit, String cursor);
+
     /**
      * Looks up topics by exact property value.
      * If no such topics exists an empty list is returned.
@@ -59,10 +104,73 @@ public interface Storage {
                                                              List<String> includeRelTypes,
                                                              List<String> excludeRelTypes);
 
+    /**
+     * Like {@link #getRelatedTopics(long, List, List, List)}, but the topics come with the given properties.
+     * The relation properties remain uninitialized.
+     *
+     * @param   fieldUris   the URIs of the topic properties to fetch.
+     */
+    public List<RelatedTopic> getRelatedTopics(long topicId, List<String> includeTopicTypes,
+                                                             List<String> includeRelTypes,
+                                                             List<String> excludeRelTypes, Set<String> fieldUris);
+
+    /**
+     * Retrieves the topics reachable from the given topic within a number of hops, in one traversal.
+     * The topic and relation properties remain uninitialized.
+     */
+    public List<RelatedTopic> getRelatedTopics(long topicId, TraversalDefinition traversal);
+
     public List<Topic> searchTopics(String searchTerm, String fieldUri, boolean wholeWord);
 
+    /**
+     * Like {@link #searchTopics(String, String, boolean)}, but the topics come with the given properties.
+     *
+     * @param   fieldUris   the URIs of the properties to fetch.
+     */
+    public List<Topic> searchTopics(String searchTerm, String fieldUri, boolean wholeWord, Set<String> fieldUris);
+
+    /**
+     * Performs a fulltext search, restricted to topics of the given types. The properties of the found topics
+     * remain uninitialized.
+     *
+     * @param   topicTypeUris   The types to search (optional). If null or empty all types are searched.
+     * @param   maxResults      The maximum number of topics to return. 0 means unlimited.
+     * @param   offset          The number of found topics to skip.
+     */
+    public List<Topic> searchTopics(String searchTerm, String fieldUri, boolean wholeWord, List<String> topicTypeUris,
+                                                                                          int maxResults, int offset);
+
+    // ---
+
+    /**
+     * Returns the number of topics of the given type.
+     */
+    public int countTopics(String typeUri);
+
+    /**
+     * Returns the number of topics with the given property value. The property must be indexed with mode KEY.
+     */
+    public int countTopics(String key, Object value);
+
+    /**
+     * Returns the number of topics {@link #getRelatedTopics(long, List, List, List)} would retrieve.
+     */
+    public int countRelatedTopics(long topicId, List<String> includeTopicTypes, List<String> includeRelTypes,
+                                                                                List<String> excludeRelTypes);
+
+    /**
+     * Returns the number of topics {@link #searchTopics(String, String, boolean, List, int, int)} would find
+     * without limit.
+     */
+    public int countSearchResults(String searchTerm, String fieldUri, boolean wholeWord, List<String> topicTypeUris);
+
     public Topic createTopic(String typeUri, Map properties);
 
+    /**
+     * Creates topics of the same type. The type is resolved once for all topics.
+     */
+    public List<Topic> createTopics(String typeUri, List<Map> properties);
+
     public void setTopicProperties(long id, Map properties);
 
     /**
@@ -72,12 +180,35 @@ public interface Storage {
      */
     public void deleteTopic(long id);
 
+    /**
+     * Deletes the topics along with their remaining relations, including their type relations. Removes the topics
+     * from the index. No hooks are triggered.
+     */
+    public void deleteTopics(long[] ids);
+
+    /**
+     * Returns the IDs of the topics of the given type.
+     */
+    public long[] getTopicIds(String typeUri);
+
     // --- Relations ---
 
     public Relation getRelation(long id);
 
     public Set<Relation> getRelations(long topicId);
 
+    /**
+     * Returns the IDs of the relations of the given topic, except the relation to its type. Cheaper than
+     * {@link #getRelations(long)}. The type relation is deleted along with the topic, see {@link #deleteTopics}.
+     */
+    public List<Long> getRelationIds(long topicId);
+
+    /**
+     * Retrieves several relations at once, including their properties. Duplicate IDs are ignored, that is every
+     * relation is returned once, in order of its first occurrence.
+     */
+    public List<Relation> getRelations(long[] ids);
+
     /**
      * Returns the relation between two topics. If no such relation exists null is returned.
      * If more than one relation exists, an exception is thrown.
@@ -99,10 +230,17 @@ public interface Storage {
 
     public Relation createRelation(String typeId, long srcTopicId, long dstTopicId, Map properties);
 
+    /**
+     * Creates relations. The IDs of the given relations are ignored.
+     */
+    public List<Relation> createRelations(List<Relation> relations);
+
     public void setRelationProperties(long id, Map properties);
 
     public void deleteRelation(long id);
 
+    public void deleteRelations(List<Long> ids);
+
     // --- Types ---
 
     public Set<String> getTopicTypeUris();
@@ -123,6 +261,21 @@ public interface Storage {
 
     public Transaction beginTx();
 
+    /**
+     * Begins a transaction for reading only. It has no commit bookkeeping. If the calling thread is inside a
+     * transaction already, that transaction is used.
+     * <p>
+     * Writing within a read-only transaction is not supported.
+     */
+    public Transaction beginReadOnlyTx();
+
+    /**
+     * Registers an action to be run once the calling thread's transaction is committed. If the transaction is
+     * rolled back the action is discarded. If the calling thread is not inside a transaction the action is run
+     * immediately.
+     */
+    public void afterCommit(Runnable action);
+
     /**
      * @return  <code>true</code> if this is a clean install, <code>false</code> otherwise.
      */
@@ -0,0 +1,330 @@
+package de.deepamehta.core.storage.neo4j;
+
+import de.deepamehta.core.model.DataField;
+import de.deepamehta.core.model.Topic;
+import de.deepamehta.core.model.TopicType;
+import de.deepamehta.core.storage.Transaction;
+import de.deepamehta.core.util.JSONHelper;
+import de.deepamehta.core.util.JavaUtils;
+
+import org.codehaus.jettison.json.JSONArray;
+import org.codehaus.jettison.json.JSONObject;
+
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.index.lucene.LuceneFulltextIndexBatchInserter;
+import org.neo4j.index.lucene.LuceneIndexBatchInserter;
+import org.neo4j.index.lucene.LuceneIndexBatchInserterImpl;
+import org.neo4j.kernel.impl.batchinsert.BatchInserter;
+import org.neo4j.kernel.impl.batchinsert.BatchInserterImpl;
+import org.neo4j.meta.model.MetaModelRelTypes;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+
+
+/**
+ * Imports topics and relations into a DeepaMehta DB offline, by the means of the Neo4j batch inserter.
+ * No transactions are involved and the index entries are written directly. Use it for initial loads and large
+ * migrations. DeepaMehta must not run while importing.
+ * <p>
+ * The topic types must exist already, that is DeepaMehta (including the plugins which define the types) must have
+ * been started once on the DB. The importer reads the types through the regular storage and then switches to the
+ * batch inserter. Once the import is complete DeepaMehta can be started on the DB as usual.
+ * <p>
+ * Input files are either declarative migration files (<code>*.json</code>, with a "topics" and an optional
+ * "relations" array), or files with one JSON object per line (NDJSON). A topic object has the same format as in
+ * migration files: <code>{"type_uri": ..., "properties": {...}}</code>. A relation object has the format
+ * <code>{"type_id": ..., "src_topic_id": ..., "dst_topic_id": ..., "properties": {...}}</code>.
+ * <p>
+ * A topic object may carry an "id". It is not stored, but relation objects can refer to the topic by it. A topic ID
+ * which is not declared in the input refers to a topic which exists in the DB already.
+ * <p>
+ * Note: uniqueness of data fields (see {@link DataField#setUnique}) is not checked by the importer.
+ */
+public class Neo4jBatchImporter {
+
+    // ---------------------------------------------------------------------------------------------- Instance Variables
+
+    private String dbPath;
+
+    private Map<String, TypeInfo> types = new HashMap();
+    private Map<Long, Long> topicIds = new HashMap();       // topic ID as declared in input -> node ID
+
+    private BatchInserter inserter;
+    private LuceneIndexBatchInserter index;
+    private LuceneIndexBatchInserter fulltextIndex;
+
+    private int topicCount;
+    private int relationCount;
+
+    private Logger logger = Logger.getLogger(getClass().getName());
+
+    // ---------------------------------------------------------------------------------------------------- Constructors
+
+    public Neo4jBatchImporter(String dbPath) {
+        this.dbPath = dbPath;
+    }
+
+    // -------------------------------------------------------------------------------------------------- Public Methods
+
+    /**
+     * Usage: <code>Neo4jBatchImporter &lt;dbPath&gt; &lt;file&gt; ...</code>
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: " + Neo4jBatchImporter.class.getName() + " <dbPath> <file> ...");
+            System.exit(1);
+        }
+        List<File> files = new ArrayList();
+        for (int i = 1; i < args.length; i++) {
+            files.add(new File(args[i]));
+        }
+        new Neo4jBatchImporter(args[0]).importFiles(files);
+    }
+
+    public void importFiles(List<File> files) {
+        readTypes();
+        //
+        logger.info("Opening DB \"" + dbPath + "\" for batch insertion");
+        inserter = new BatchInserterImpl(dbPath);
+        index = new LuceneIndexBatchInserterImpl(inserter);
+        fulltextIndex = new LuceneFulltextIndexBatchInserter(inserter);
+        try {
+            for (File file : files) {
+                importFile(file);
+            }
+            logger.info("Optimizing index");
+            index.optimize();
+            fulltextIndex.optimize();
+        } finally {
+            // Note: the counters are updated even if the import fails. The topics imported so far remain in the DB.
+            updateTopicCounts();
+            fulltextIndex.shutdown();
+            index.shutdown();
+            inserter.shutdown();
+        }
+        logger.info("Import complete (" + topicCount + " topics, " + relationCount + " relations)");
+    }
+
+    // ------------------------------------------------------------------------------------------------- Private Methods
+
+    /**
+     * Reads the topic types through the regular storage.
+     */
+    private void readTypes() {
+        Neo4jStorage storage = new Neo4jStorage(dbPath);
+        try {
+            Transaction tx = storage.beginTx();
+            try {
+                if (storage.init()) {
+                    throw new RuntimeException("DB \"" + dbPath + "\" is not set up. Start DeepaMehta once " +
+                        "before importing.");
+                }
+                for (String typeUri : storage.getTopicTypeUris()) {
+                    types.put(typeUri, new TypeInfo(storage, typeUri));
+                }
+                tx.success();
+            } finally {
+                tx.finish();
+            }
+        } finally {
+            storage.shutdown();
+        }
+        logger.info("Read " + types.size() + " topic types");
+    }
+
+    private void importFile(File file) {
+        try {
+            logger.info("Importing \"" + file + "\"");
+            if (file.getName().endsWith(".json")) {
+                JSONObject o = new JSONObject(JavaUtils.readTextFile(file));
+                if (o.has("topic_types")) {
+                    throw new RuntimeException("Topic types can't be imported offline. Create them by a " +
+                        "migration and start DeepaMehta once.");
+                }
+                JSONArray topics = o.optJSONArray("topics");
+                for (int i = 0; topics != null && i < topics.length(); i++) {
+                    importTopic(topics.getJSONObject(i));
+                }
+                JSONArray relations = o.optJSONArray("relations");
+                for (int i = 0; relations != null && i < relations.length(); i++) {
+                    importRelation(relations.getJSONObject(i));
+                }
+            } else {
+                BufferedReader in = new BufferedReader(new FileReader(file));
+                try {
+                    String line;
+                    while ((line = in.readLine()) != null) {
+                        line = line.trim();
+                        if (line.length() == 0) {
+                            continue;
+                        }
+                        JSONObject o = new JSONObject(line);
+                        if (o.has("type_uri")) {
+                            importTopic(o);
+                        } else {
+                            importRelation(o);
+                        }
+                    }
+                } finally {
+                    in.close();
+                }
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Error while importing \"" + file + "\" (" + topicCount + " topics and " +
+                relationCount + " relations are imported already)", e);
+        }
+    }
+
+    private void importTopic(JSONObject o) throws Exception {
+        Topic topic = new Topic(o);
+        TypeInfo type = getTypeInfo(topic.typeUri);
+        Map<String, Object> properties = topic.getProperties();
+        String label = type.calculateLabel(properties);
+        //
+        Map nodeProperties = new HashMap(properties);
+        nodeProperties.put(Neo4jStorage.KEY_TOPIC_LABEL, label);
+        long nodeId = inserter.createNode(nodeProperties);
+        inserter.createRelationship(type.typeNodeId, nodeId, MetaModelRelTypes.META_HAS_INSTANCE, null);
+        type.importCount++;
+        long bucket = nodeId >> Neo4jStorage.INSTANCE_BUCKET_BITS;
+        index.index(nodeId, Neo4jStorage.KEY_INSTANCE_BUCKET, Neo4jStorage.instanceBucket(type.typeNodeId, bucket));
+        type.maxBucket = Math.max(type.maxBucket, bucket);
+        //
+        for (String key : properties.keySet()) {
+            indexProperty(nodeId, type, key, properties.get(key));
+        }
+        index.index(nodeId, Neo4jStorage.KEY_TOPIC_LABEL, label);
+        //
+        if (o.has("id")) {
+            topicIds.put(o.getLong("id"), nodeId);
+        }
+        if (++topicCount % 100000 == 0) {
+            logger.info(topicCount + " topics imported");
+        }
+    }
+
+    private void importRelation(JSONObject o) throws Exception {
+        long srcNodeId = getNodeId(o.getLong("src_topic_id"));
+        long dstNodeId = getNodeId(o.getLong("dst_topic_id"));
+        JSONObject properties = o.optJSONObject("properties");
+        inserter.createRelationship(srcNodeId, dstNodeId, DynamicRelationshipType.withName(o.getString("type_id")),
+            properties != null ? JSONHelper.toMap(properties) : null);
+        if (++relationCount % 100000 == 0) {
+            logger.info(relationCount + " relations imported");
+        }
+    }
+
+    /**
+     * Adds the number of imported topics to the topic counters of the types, and updates the types' highest instance
+     * bucket. Mirrors Neo4jStorage's updateTopicCount() and indexInstance(): a type which is not upgraded yet has no
+     * counter and is skipped.
+     */
+    private void updateTopicCounts() {
+        for (TypeInfo type : types.values()) {
+            if (type.importCount == 0) {
+                continue;
+            }
+            Map<String, Object> properties = inserter.getNodeProperties(type.typeNodeId);
+            Integer count = (Integer) properties.get(Neo4jStorage.KEY_TOPIC_COUNT);
+            if (count != null) {
+                properties.put(Neo4jStorage.KEY_TOPIC_COUNT, count + type.importCount);
+            }
+            Long maxBucket = (Long) properties.get(Neo4jStorage.KEY_MAX_INSTANCE_BUCKET);
+            if (maxBucket == null || type.maxBucket > maxBucket) {
+                properties.put(Neo4jStorage.KEY_MAX_INSTANCE_BUCKET, type.maxBucket);
+            }
+            inserter.setNodeProperties(type.typeNodeId, properties);
+        }
+    }
+
+    /**
+     * Writes the index entries for a topic property. Mirrors Neo4jStorage's indexProperty().
+     */
+    private void indexProperty(long nodeId, TypeInfo type, String key, Object value) {
+        DataField dataField = type.getDataField(key);
+        String indexingMode = dataField.getIndexingMode();
+        if (indexingMode.equals("KEY")) {
+            index.index(nodeId, key, value);
+        } else if (indexingMode.equals("FULLTEXT")) {
+            fulltextIndex.index(nodeId, "default", Neo4jStorage.fulltextValue(value, type.typeNodeId));
+        } else if (indexingMode.equals("FULLTEXT_KEY")) {
+            fulltextIndex.index(nodeId, key, value);
+        }
+        if (!indexingMode.equals("OFF") || dataField.getUnique()) {
+            index.index(nodeId, Neo4jStorage.KEY_TYPED_VALUE, Neo4jStorage.typedValue(type.typeNodeId, key, value));
+        }
+    }
+
+    // ---
+
+    private TypeInfo getTypeInfo(String typeUri) {
+        TypeInfo type = types.get(typeUri);
+        if (type == null || typeUri.equals("de/deepamehta/core/topictype/TopicType")) {
+            throw new RuntimeException("Topic type \"" + typeUri + "\" is unknown or can't be imported");
+        }
+        return type;
+    }
+
+    private long getNodeId(long topicId) {
+        Long nodeId = topicIds.get(topicId);
+        if (nodeId != null) {
+            return nodeId;
+        }
+        if (!inserter.nodeExists(topicId)) {
+            throw new RuntimeException("Topic " + topicId + " is neither declared in the input nor does it exist");
+        }
+        return topicId;
+    }
+
+    // -------------------------------------------------------------------------------------------------- Nested Classes
+
+    /**
+     * What the importer needs to know about a topic type.
+     */
+    private static class TypeInfo {
+
+        private String typeUri;
+        private long typeNodeId;
+        private String labelFieldUri;
+        private Map<String, DataField> dataFields = new HashMap();
+        private int importCount;        // number of topics imported
+        private long maxBucket = -1;    // highest instance bucket of the imported topics
+
+        private TypeInfo(Neo4jStorage storage, String typeUri) {
+            TopicType topicType = storage.getTopicType(typeUri);
+            this.typeUri = typeUri;
+            this.typeNodeId = storage.getMetaClass(typeUri).node().getId();
+            this.labelFieldUri = storage.getLabelFieldUri(topicType);
+            for (DataField dataField : topicType.getDataFields()) {
+                dataFields.put(dataField.getUri(), dataField);
+            }
+        }
+
+        private DataField getDataField(String key) {
+            DataField dataField = dataFields.get(key);
+            if (dataField == null) {
+                throw new RuntimeException("Topic type \"" + typeUri + "\" has no data field \"" + key + "\"");
+            }
+            return dataField;
+        }
+
+        /**
+         * Mirrors Neo4jStorage's calculateLabel().
+         */
+        private String calculateLabel(Map<String, Object> properties) {
+            if (labelFieldUri == null) {
+                return "?";
+            }
+            Object value = properties.get(labelFieldUri);
+            return value != null ? value.toString() : "?";
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package de.deepamehta.core.storage.neo4j;
+
+
+
+/**
+ * A read-only transaction.
+ * <p>
+ * Neo4j doesn't require a transaction for reading: a read outside a transaction sees the committed state, a read
+ * within the thread's running transaction sees that transaction's state. So a read-only transaction doesn't begin a
+ * Neo4j transaction at all. A thread which is inside a transaction already just keeps using it.
+ * <p>
+ * Writing within a read-only transaction (and outside any other transaction) fails.
+ */
+class Neo4jReadOnlyTransaction implements de.deepamehta.core.storage.Transaction {
+
+    // ------------------------------------------------------------------------------------------------------- Constants
+
+    static final Neo4jReadOnlyTransaction INSTANCE = new Neo4jReadOnlyTransaction();
+
+    // -------------------------------------------------------------------------------------------------- Public Methods
+
+    public void success() {
+    }
+
+    public void failure() {
+    }
+
+    public void finish() {
+    }
+}
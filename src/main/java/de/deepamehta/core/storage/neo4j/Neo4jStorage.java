@@ -2,7 +2,9 @@ package de.deepamehta.core.storage.neo4j;
 
 import de.deepamehta.core.model.DataField;
 import de.deepamehta.core.model.Topic;
+import de.deepamehta.core.model.TopicPage;
 import de.deepamehta.core.model.TopicType;
+import de.deepamehta.core.model.TraversalDefinition;
 import de.deepamehta.core.model.RelatedTopic;
 import de.deepamehta.core.model.Relation;
 import de.deepamehta.core.storage.Storage;
@@ -24,6 +26,7 @@ import org.neo4j.graphdb.Traverser.Order;
 import org.neo4j.graphdb.traversal.PruneEvaluator;
 import org.neo4j.graphdb.traversal.TraversalDescription;
 import org.neo4j.graphdb.traversal.Traverser;
+import org.neo4j.graphdb.traversal.Uniqueness;
 import org.neo4j.helpers.Predicate;
 import org.neo4j.kernel.EmbeddedGraphDatabase;
 import org.neo4j.kernel.Traversal;
@@ -40,19 +43,72 @@ import org.neo4j.meta.model.MetaModelProperty;
 import org.neo4j.meta.model.MetaModelRelTypes;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 
 
 public class Neo4jStorage implements Storage {
 
+    private static final int NODE_TYPE_CACHE_SIZE = 200000;
+
+    // The topic label is stored (and indexed) along with the topic properties. See updateLabel().
+    static final String KEY_TOPIC_LABEL = "topic_label";
+    private static final int RELABEL_CHUNK_SIZE = 1000;     // number of topics relabeled per transaction
+    private static final int LABEL_VERSION = 2;             // 2: every topic has a stored label
+
+    // Every fulltext indexed value carries a term which denotes the topic type. See fulltextValue().
+    // The type term starts with a control character. User search terms are stripped of control characters (see
+    // searchQuery()), so a user query can never match a type term. Only typeQuery() refers to type terms.
+    private static final String TYPE_TERM_PREFIX = "\u0001dmtype";
+    // Characters with a meaning in the Lucene query syntax. They are escaped in user search terms.
+    private static final String QUERY_SYNTAX_CHARS = "\\+-!():^[]\"{}~*?|&/";
+    // The indexed property values of a topic are indexed a second time along with the topic type and the property
+    // key, under this key. See typedValue().
+    static final String KEY_TYPED_VALUE = "typed_value";
+
+    // Written in order to write-lock a type node while a unique value is checked and written. See checkUniqueness().
+    private static final String KEY_UNIQUENESS_LOCK = "uniqueness_lock";
+
+    // Every topic is indexed under this key along with its type and the range its ID falls in ("instance bucket"),
+    // and the type node stores the highest instance bucket. Allows to page through the topics of a type in order
+    // of their IDs, resuming at any ID. See getTopics(String, int, String).
+    static final String KEY_INSTANCE_BUCKET = "instance_bucket";
+    static final String KEY_MAX_INSTANCE_BUCKET = "max_instance_bucket";
+    static final int INSTANCE_BUCKET_BITS = 10;     // an instance bucket covers 1024 IDs
+
+    private static final int INDEX_VERSION = 6;     // 2: fulltext indexed values carry the type term
+                                                    // 3: indexed values are indexed as typed values as well
+                                                    // 4: the type term starts with a control character
+                                                    // 5: typed values carry the value kind
+                                                    // 6: topics are indexed in their instance bucket
+
+    private static final int UPGRADE_CHUNK_SIZE = 1000;     // number of topics upgraded per transaction
+
+    // The data field order of a topic type is stored at the type node: the IDs of the data field nodes, in order.
+    static final String KEY_FIELD_ORDER = "field_order";
+
+    // The number of topics of a topic type is stored at the type node. See updateTopicCount().
+    static final String KEY_TOPIC_COUNT = "topic_count";
+
+    private static final int TYPE_FORMAT_VERSION = 3;   // 2: data field order is stored at the type node (formerly
+                                                        //    as a chain of SEQUENCE relationships)
+                                                        // 3: the number of topics is stored at the type node
+
     private final Logger logger = Logger.getLogger(getClass().getName());
 
     private GraphDatabaseService graphDb;
@@ -69,15 +125,29 @@ public class Neo4jStorage implements Storage {
     // We do it this way because we don't want extend the core service resp. the storage interfaces.
     final TypeCache typeCache;
 
+    // Note: the node type cache is package private in order to let a Neo4jTopicType invalidate it when its URI changes,
+    // and to let a Neo4jTransaction invalidate it on rollback.
+    final NodeTypeCache nodeTypeCache;
+
+    // Note: the current transaction is package private in order to let a Neo4jTransaction register itself.
+    final ThreadLocal<Neo4jTransaction> currentTx = new ThreadLocal();
+
+    // Resolved relationship types, hashed by name. See getRelationshipType().
+    private ConcurrentMap<String, RelationshipType> relTypes = new ConcurrentHashMap();
+
+    // Runs the relabel jobs. See relabelTopics().
+    private ExecutorService relabelExecutor = Executors.newSingleThreadExecutor();
+
     // SEARCH_RESULT relations are not part of the knowledge base but help to visualize / navigate result sets.
     static enum RelType implements RelationshipType {
         RELATION, SEARCH_RESULT,
-        SEQUENCE_START, SEQUENCE
+        SEQUENCE_START, SEQUENCE    // obsolete, read only when upgrading the type format. See upgradeFieldOrder().
     }
 
     public Neo4jStorage(String dbPath) {
         logger.info("Creating DB and indexing services");
         this.typeCache = new TypeCache(this);
+        this.nodeTypeCache = new NodeTypeCache(NODE_TYPE_CACHE_SIZE);
         //
         graphDb = new EmbeddedGraphDatabase(dbPath);
     }
@@ -98,9 +168,16 @@ public class Neo4jStorage implements Storage {
         return buildTopic(graphDb.getNodeById(id), true);
     }
 
+    @Override
+    public Topic getTopic(long id, Set<String> fieldUris) {
+        logger.info("Getting node " + id + " (fields " + fieldUris + ")");
+        return buildTopic(graphDb.getNodeById(id), fieldUris);
+    }
+
     @Override
     public Topic getTopic(String key, Object value) {
         logger.info("Getting node by property (" + key + "=" + value + ")");
+        flushIndexUpdates();
         Node node = index.getSingleNode(key, value);
         return node != null ? buildTopic(node, true) : null;
     }
@@ -108,17 +185,19 @@ public class Neo4jStorage implements Storage {
     @Override
     public Topic getTopic(String typeUri, String key, Object value) {
         logger.info("Getting node (typeUri=" + typeUri + ", " + key + "=" + value + ")");
-        IndexHits<Node> nodes = fulltextIndex.getNodesExactMatch(key, value);
         Node resultNode = null;
-        // apply type filter
-        for (Node node : nodes) {
-            if (getTypeUri(node).equals(typeUri)) {
+        flushIndexUpdates();
+        IndexHits<Node> nodes = index.getNodes(KEY_TYPED_VALUE, typedValue(typeUri, key, value));
+        try {
+            for (Node node : nodes) {
                 if (resultNode != null) {
                     throw new RuntimeException("Ambiguity: more than one topic matches " +
                         "(typeUri=" + typeUri + ", " + key + "=" + value + ")");
                 }
                 resultNode = node;
             }
+        } finally {
+            nodes.close();
         }
         //
         return resultNode != null ? buildTopic(resultNode, true) : null;
@@ -131,17 +210,74 @@ public class Neo4jStorage implements Storage {
 
     @Override
     public List<Topic> getTopics(String typeUri) {
+        // Note: the topic properties remain uninitialzed here.
+        // It is up to the plugins to provide selected properties (see providePropertiesHook()).
+        return getTopics(typeUri, Collections.EMPTY_SET);
+    }
+
+    @Override
+    public List<Topic> getTopics(String typeUri, Set<String> fieldUris) {
         List topics = new ArrayList();
         for (Node node : getMetaClass(typeUri).getDirectInstances()) {
+            topics.add(buildTopic(node, fieldUris));
+        }
+        return topics;
+    }
+
+    @Override
+    public List<Topic> getTopics(long[] ids, boolean includeProperties) {
+        logger.info("Getting " + ids.length + " nodes");
+        List<Topic> topics = new ArrayList();
+        for (long id : distinct(ids)) {
+            topics.add(buildTopic(graphDb.getNodeById(id), includeProperties));
+        }
+        return topics;
+    }
+
+    @Override
+    public TopicPage getTopics(String typeUri, int limit, String cursor) {
+        // Note: the topics are walked in order of their IDs. A page starts at the first ID greater than the cursor's
+        // and is collected from the instance buckets (see KEY_INSTANCE_BUCKET) which cover the following ID ranges.
+        // No state is kept between pages. The cost of a page depends on its size and on the ID range it covers, but
+        // not on the number of topics before the cursor.
+        long lastNodeId = cursor != null ? parseCursor(cursor) : -1;
+        Node typeNode = getMetaClass(typeUri).node();
+        Long maxBucket = (Long) typeNode.getProperty(KEY_MAX_INSTANCE_BUCKET, null);
+        // Note: one more ID than requested is collected in order to tell if there is a next page.
+        List<Long> ids = new ArrayList();
+        if (maxBucket != null) {
+            long bucket = (lastNodeId + 1) >> INSTANCE_BUCKET_BITS;
+            while (ids.size() <= limit && bucket <= maxBucket) {
+                ids.addAll(getInstanceIds(typeNode, bucket++, lastNodeId));
+            }
+        } else {
+            // the type has no topics, or the index upgrade is not complete yet (see Reindex)
+            long[] topicIds = getTopicIds(typeUri);
+            Arrays.sort(topicIds);
+            for (long id : topicIds) {
+                if (id > lastNodeId && ids.size() <= limit) {
+                    ids.add(id);
+                }
+            }
+        }
+        //
+        List<Topic> topics = new ArrayList();
+        for (int i = 0; i < limit && i < ids.size(); i++) {
             // Note: the topic properties remain uninitialzed here.
             // It is up to the plugins to provide selected properties (see providePropertiesHook()).
-            topics.add(buildTopic(node, false));
+            topics.add(buildTopic(graphDb.getNodeById(ids.get(i)), false));
         }
-        return topics;
+        //
+        String nextCursor = null;
+        if (ids.size() > limit) {
+            nextCursor = Long.toString(topics.get(topics.size() - 1).id);
+        }
+        return new TopicPage(topics, nextCursor);
     }
 
     @Override
     public List<Topic> getTopics(String key, Object value) {
+        flushIndexUpdates();
         IndexHits<Node> nodes = index.getNodes(key, value);
         logger.info("Getting nodes by property (" + key + "=" + value + ") => " + nodes.size() + " nodes");
         List topics = new ArrayList();
@@ -151,55 +287,130 @@ public class Neo4jStorage implements Storage {
         return topics;
     }
 
+    // ---
+
+    @Override
+    public int countTopics(String typeUri) {
+        MetaModelClass metaClass = getMetaClass(typeUri);
+        Integer count = (Integer) metaClass.node().getProperty(KEY_TOPIC_COUNT, null);
+        if (count != null) {
+            return count;
+        }
+        // Note: a type which is not upgraded yet has no topic counter. Its instances are counted by their
+        // META_HAS_INSTANCE relationships. No topic is built.
+        return metaClass.getDirectInstances().size();
+    }
+
+    @Override
+    public int countTopics(String key, Object value) {
+        flushIndexUpdates();
+        IndexHits<Node> nodes = index.getNodes(key, value);
+        try {
+            return nodes.size();
+        } finally {
+            nodes.close();
+        }
+    }
+
+    @Override
+    public int countRelatedTopics(long topicId, List<String> includeTopicTypes, List<String> includeRelTypes,
+                                                                                List<String> excludeRelTypes) {
+        Node startNode = graphDb.getNodeById(topicId);
+        Traverser traverser = createRelatedTopicsTraverser(startNode, includeTopicTypes,
+                                                                      includeRelTypes, excludeRelTypes);
+        int count = 0;
+        for (Path path : traverser) {
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public int countSearchResults(String searchTerm, String fieldUri, boolean wholeWord, List<String> topicTypeUris) {
+        if (fieldUri != null) {
+            // a FULLTEXT_KEY field carries no type terms, so the hits must be filtered (see searchNodes())
+            return searchNodes(searchTerm, fieldUri, wholeWord, topicTypeUris, 0, 0).size();
+        }
+        flushIndexUpdates();
+        IndexHits<Node> hits = fulltextIndex.getNodes("default", "+(" + searchQuery(searchTerm, wholeWord) + ")" +
+            typeQuery(topicTypeUris));
+        try {
+            return hits.size();
+        } finally {
+            hits.close();
+        }
+    }
+
     @Override
     public List<RelatedTopic> getRelatedTopics(long topicId, List<String> includeTopicTypes,
                                                              List<String> includeRelTypes,
                                                              List<String> excludeRelTypes) {
-        // Note: we must exclude the meta-model's namespace and property nodes. They are not intended for
-        // being exposed to the user (additionally, getTypeNode() would fail on these nodes).
-        excludeRelTypes.add("META_CLASS;OUTGOING");
-        excludeRelTypes.add("META_HAS_PROPERTY;INCOMING");
-        excludeRelTypes.add("SEQUENCE_START;INCOMING");
+        // Note: the topic properties remain uninitialzed here.
+        // It is up to the plugins to provide selected properties (see providePropertiesHook()).
+        return getRelatedTopics(topicId, includeTopicTypes, includeRelTypes, excludeRelTypes, Collections.EMPTY_SET);
+    }
+
+    @Override
+    public List<RelatedTopic> getRelatedTopics(long topicId, List<String> includeTopicTypes,
+                                                             List<String> includeRelTypes,
+                                                             List<String> excludeRelTypes, Set<String> fieldUris) {
         Node startNode = graphDb.getNodeById(topicId);
         Traverser traverser = createRelatedTopicsTraverser(startNode, includeTopicTypes,
                                                                       includeRelTypes, excludeRelTypes);
         List relTopics = new ArrayList();
         for (Path path : traverser) {
-            Node node = path.endNode();
-            Relationship relation = path.lastRelationship();
-            //
-            RelatedTopic relTopic = new RelatedTopic();
-            // Note: the topic properties remain uninitialzed here.
-            // It is up to the plugins to provide selected properties (see providePropertiesHook()).
-            relTopic.setTopic(buildTopic(node, false));
-            // Note: the relation properties remain uninitialzed here.
-            // It is up to the plugins to provide selected properties (see providePropertiesHook()).
-            relTopic.setRelation(buildRelation(relation, false));
-            //
-            relTopics.add(relTopic);
+            relTopics.add(buildRelatedTopic(path, fieldUris));
         }
         logger.info("=> " + relTopics.size() + " related nodes");
         return relTopics;
     }
 
+    @Override
+    public List<RelatedTopic> getRelatedTopics(long topicId, TraversalDefinition traversal) {
+        Node startNode = graphDb.getNodeById(topicId);
+        TraversalFilter filter = new TraversalFilter(traversal);
+        //
+        TraversalDescription desc = Traversal.description();
+        desc = desc.filter(filter);
+        desc = desc.prune(filter);
+        // We need breadth first in order to return the topics in order of their depth.
+        desc = desc.breadthFirst();
+        desc = desc.uniqueness(Uniqueness.valueOf(traversal.getUniqueness().name()));
+        //
+        int maxResults = traversal.getMaxResults();
+        List relTopics = new ArrayList();
+        for (Path path : desc.traverse(startNode)) {
+            if (maxResults > 0 && relTopics.size() == maxResults) {
+                break;
+            }
+            relTopics.add(buildRelatedTopic(path, Collections.EMPTY_SET));
+        }
+        logger.info("Traversing from node " + topicId + " (" + traversal + ") => " + relTopics.size() +
+            " related nodes");
+        return relTopics;
+    }
+
     @Override
     public List<Topic> searchTopics(String searchTerm, String fieldUri, boolean wholeWord) {
-        if (fieldUri == null) fieldUri = "default";
-        if (!wholeWord) searchTerm += "*";
-        IndexHits<Node> nodes = fulltextIndex.getNodes(fieldUri, searchTerm);
-        logger.info("Searching \"" + searchTerm + "\" in field \"" + fieldUri + "\" => " + nodes.size() + " nodes");
+        return searchTopics(searchTerm, fieldUri, wholeWord, Collections.EMPTY_SET);  // properties remain uninitialized
+    }
+
+    @Override
+    public List<Topic> searchTopics(String searchTerm, String fieldUri, boolean wholeWord, Set<String> fieldUris) {
         List topics = new ArrayList();
-        for (Node node : nodes) {
-            logger.fine("Adding node " + node.getId());
-            // Filter result set. Note: a search should not find other searches.
-            //
-            // TODO: drop this filter. Items not intended for being find should not be indexed at all. Model change
-            // required: the indexing mode must be specified per topic type/data field pair instead per data field.
-            if (!getTypeUri(node).equals("de/deepamehta/core/topictype/SearchResult")) {
-                topics.add(buildTopic(node, false));    // properties remain uninitialized
-            }
+        for (Node node : searchNodes(searchTerm, fieldUri, wholeWord, null, 0, 0)) {
+            topics.add(buildTopic(node, fieldUris));
+        }
+        return topics;
+    }
+
+    @Override
+    public List<Topic> searchTopics(String searchTerm, String fieldUri, boolean wholeWord, List<String> topicTypeUris,
+                                                                                          int maxResults, int offset) {
+        List topics = new ArrayList();
+        for (Node node : searchNodes(searchTerm, fieldUri, wholeWord, topicTypeUris, maxResults, offset)) {
+            topics.add(buildTopic(node, false));    // properties remain uninitialized
         }
-        logger.info("After filtering => " + topics.size() + " nodes");
         return topics;
     }
 
@@ -207,9 +418,31 @@ public class Neo4jStorage implements Storage {
     public Topic createTopic(String typeUri, Map properties) {
         Node node = graphDb.createNode();
         logger.info("Creating node => ID=" + node.getId());
-        getMetaClass(typeUri).getDirectInstances().add(node);       // set topic type
+        MetaModelClass metaClass = getMetaClass(typeUri);
+        metaClass.getDirectInstances().add(node);                   // set topic type
+        updateTopicCount(metaClass.node(), 1);
+        indexInstance(node, metaClass.node());
+        nodeTypeCache.put(node.getId(), typeUri);
         setProperties(node, properties, typeUri);
-        return new Topic(node.getId(), typeUri, null, properties);  // FIXME: label remains uninitialized
+        return new Topic(node.getId(), typeUri, (String) node.getProperty(KEY_TOPIC_LABEL, null), properties);
+    }
+
+    @Override
+    public List<Topic> createTopics(String typeUri, List<Map> properties) {
+        logger.info("Creating " + properties.size() + " nodes of type \"" + typeUri + "\"");
+        MetaModelClass metaClass = getMetaClass(typeUri);
+        Collection<Node> instances = metaClass.getDirectInstances();
+        List topics = new ArrayList();
+        for (Map props : properties) {
+            Node node = graphDb.createNode();
+            instances.add(node);                                    // set topic type
+            indexInstance(node, metaClass.node());
+            nodeTypeCache.put(node.getId(), typeUri);
+            setProperties(node, props, typeUri);
+            topics.add(new Topic(node.getId(), typeUri, (String) node.getProperty(KEY_TOPIC_LABEL, null), props));
+        }
+        updateTopicCount(metaClass.node(), properties.size());
+        return topics;
     }
 
     @Override
@@ -229,6 +462,45 @@ public class Neo4jStorage implements Storage {
         removeFromIndex(node);
         //
         node.delete();
+        nodeTypeCache.remove(id);
+    }
+
+    @Override
+    public void deleteTopics(long[] ids) {
+        logger.info("Deleting " + ids.length + " nodes");
+        Map<String, Integer> counts = new HashMap();    // number of deleted topics, hashed by type URI
+        for (long id : ids) {
+            Node node = graphDb.getNodeById(id);
+            // Note: the type must be determined before the node's META_HAS_INSTANCE relationship is deleted.
+            String typeUri = getTypeUri(node);
+            // update index
+            removeFromIndex(node, typeUri);
+            //
+            for (Relationship rel : node.getRelationships()) {
+                rel.delete();
+            }
+            node.delete();
+            nodeTypeCache.remove(id);
+            //
+            Integer count = counts.get(typeUri);
+            counts.put(typeUri, count != null ? count + 1 : 1);
+        }
+        for (String typeUri : counts.keySet()) {
+            if (!typeUri.equals("de/deepamehta/core/topictype/TopicType")) {
+                updateTopicCount(getMetaClass(typeUri).node(), -counts.get(typeUri));
+            }
+        }
+    }
+
+    @Override
+    public long[] getTopicIds(String typeUri) {
+        Collection<Node> instances = getMetaClass(typeUri).getDirectInstances();
+        long[] ids = new long[instances.size()];
+        int i = 0;
+        for (Node node : instances) {
+            ids[i++] = node.getId();
+        }
+        return ids;
     }
 
     // --- Relations ---
@@ -251,22 +523,37 @@ public class Neo4jStorage implements Storage {
     }
 
     @Override
-    public Relation getRelation(long srcTopicId, long dstTopicId, String typeId, boolean isDirected) {
-        logger.info("Getting relationship between nodes " + srcTopicId + " and " + dstTopicId);
-        Relationship relationship = null;
-        Node node = graphDb.getNodeById(srcTopicId);
+    public List<Long> getRelationIds(long topicId) {
+        List<Long> relIds = new ArrayList();
+        Node node = graphDb.getNodeById(topicId);
         for (Relationship rel : node.getRelationships()) {
-            if (!doRelationshipMatches(rel, node, dstTopicId, typeId, isDirected)) {
-                continue;
+            if (!(rel.isType(MetaModelRelTypes.META_HAS_INSTANCE) && rel.getEndNode().equals(node))) {
+                relIds.add(rel.getId());
             }
-            // ambiguity?
-            if (relationship != null) {
-                throw new RuntimeException("Ambiguity: more than one relation matches (srcTopicId=" + srcTopicId +
-                    ", dstTopicId=" + dstTopicId + ", typeId=" + typeId + ", isDirected=" + isDirected + ")");
-            }
-            //
-            relationship = rel;
         }
+        return relIds;
+    }
+
+    @Override
+    public List<Relation> getRelations(long[] ids) {
+        logger.info("Getting " + ids.length + " relationships");
+        List<Relation> relations = new ArrayList();
+        for (long id : distinct(ids)) {
+            relations.add(buildRelation(graphDb.getRelationshipById(id), true));
+        }
+        return relations;
+    }
+
+    @Override
+    public Relation getRelation(long srcTopicId, long dstTopicId, String typeId, boolean isDirected) {
+        logger.info("Getting relationship between nodes " + srcTopicId + " and " + dstTopicId);
+        List<Relationship> rels = findRelationships(srcTopicId, dstTopicId, typeId, isDirected);
+        // ambiguity?
+        if (rels.size() > 1) {
+            throw new RuntimeException("Ambiguity: more than one relation matches (srcTopicId=" + srcTopicId +
+                ", dstTopicId=" + dstTopicId + ", typeId=" + typeId + ", isDirected=" + isDirected + ")");
+        }
+        Relationship relationship = rels.isEmpty() ? null : rels.get(0);
         if (relationship != null) {
             logger.info("=> relationship found (ID=" + relationship.getId() + ")");
             return buildRelation(relationship, true);
@@ -279,11 +566,7 @@ public class Neo4jStorage implements Storage {
     public List<Relation> getRelations(long srcTopicId, long dstTopicId, String typeId, boolean isDirected) {
         logger.info("Getting relationships between nodes " + srcTopicId + " and " + dstTopicId);
         List<Relation> relations = new ArrayList();
-        Node node = graphDb.getNodeById(srcTopicId);
-        for (Relationship rel : node.getRelationships()) {
-            if (!doRelationshipMatches(rel, node, dstTopicId, typeId, isDirected)) {
-                continue;
-            }
+        for (Relationship rel : findRelationships(srcTopicId, dstTopicId, typeId, isDirected)) {
             relations.add(buildRelation(rel, false));
         }
         //
@@ -301,11 +584,26 @@ public class Neo4jStorage implements Storage {
         logger.info("Creating \"" + typeId + "\" relationship from node " + srcTopicId + " to " + dstTopicId);
         Node srcNode = graphDb.getNodeById(srcTopicId);
         Node dstNode = graphDb.getNodeById(dstTopicId);
-        Relationship relationship = srcNode.createRelationshipTo(dstNode, getRelationshipType(typeId));
+        Relationship relationship = srcNode.createRelationshipTo(dstNode, createRelationshipType(typeId));
         setProperties(relationship, properties);
         return new Relation(relationship.getId(), typeId, srcTopicId, dstTopicId, properties);
     }
 
+    @Override
+    public List<Relation> createRelations(List<Relation> relations) {
+        logger.info("Creating " + relations.size() + " relationships");
+        List created = new ArrayList();
+        for (Relation rel : relations) {
+            Node srcNode = graphDb.getNodeById(rel.srcTopicId);
+            Node dstNode = graphDb.getNodeById(rel.dstTopicId);
+            Relationship relationship = srcNode.createRelationshipTo(dstNode, createRelationshipType(rel.typeId));
+            setProperties(relationship, rel.getProperties());
+            created.add(new Relation(relationship.getId(), rel.typeId, rel.srcTopicId, rel.dstTopicId,
+                rel.getProperties()));
+        }
+        return created;
+    }
+
     @Override
     public void setRelationProperties(long id, Map properties) {
         logger.info("Setting properties of relationship " + id + ": " + properties);
@@ -319,6 +617,14 @@ public class Neo4jStorage implements Storage {
         graphDb.getRelationshipById(id).delete();
     }
 
+    @Override
+    public void deleteRelations(List<Long> ids) {
+        logger.info("Deleting " + ids.size() + " relationships");
+        for (long id : ids) {
+            graphDb.getRelationshipById(id).delete();
+        }
+    }
+
     // --- Types ---
 
     @Override
@@ -349,7 +655,22 @@ public class Neo4jStorage implements Storage {
 
     @Override
     public void updateDataField(String typeUri, DataField dataField) {
-        getTopicType(typeUri).getDataField(dataField.getUri()).setProperties(dataField.getProperties());
+        TopicType topicType = getTopicType(typeUri);
+        DataField oldField = topicType.getDataField(dataField.getUri());
+        // Note: the buffered index updates are written according to the old indexing mode
+        flushIndexUpdates();
+        topicType.updateDataField(dataField);
+        DataField field = topicType.getDataField(dataField.getUri());
+        if (!field.getIndexingMode().equals(oldField.getIndexingMode()) ||
+                !field.getUnique().equals(oldField.getUnique())) {
+            try {
+                reindexDataField(typeUri, field, oldField.getIndexingMode(), isTypedValueIndexed(oldField));
+            } catch (RuntimeException e) {
+                // the transaction is rolled back -- restore the cached data field
+                topicType.updateDataField(oldField);
+                throw e;
+            }
+        }
     }
 
     @Override
@@ -366,7 +687,22 @@ public class Neo4jStorage implements Storage {
 
     @Override
     public de.deepamehta.core.storage.Transaction beginTx() {
-        return new Neo4jTransaction(graphDb);
+        return new Neo4jTransaction(graphDb, this);
+    }
+
+    @Override
+    public de.deepamehta.core.storage.Transaction beginReadOnlyTx() {
+        return Neo4jReadOnlyTransaction.INSTANCE;
+    }
+
+    @Override
+    public void afterCommit(Runnable action) {
+        Neo4jTransaction tx = currentTx.get();
+        if (tx != null) {
+            tx.afterCommit(action);
+        } else {
+            action.run();
+        }
     }
 
     /**
@@ -380,18 +716,50 @@ public class Neo4jStorage implements Storage {
         // 2) init meta model
         MetaModel model = new MetaModelImpl(graphDb, index);
         namespace = model.getGlobalNamespace();
-        // 3) init migration number
-        if (!graphDb.getReferenceNode().hasProperty("core_migration_nr")) {
+        // 3) init relationship types
+        initRelationshipTypes();
+        // 4) upgrade types
+        int typeFormatVersion = (Integer) graphDb.getReferenceNode().getProperty("type_format_version", 1);
+        if (typeFormatVersion < 2) {
+            upgradeFieldOrder();
+            graphDb.getReferenceNode().setProperty("type_format_version", 2);
+        }
+        if (typeFormatVersion < 3) {
+            upgradeTopicCounts();
+        }
+        // 5) load types
+        typeCache.load();
+        // 6) init migration number
+        boolean isCleanInstall = !graphDb.getReferenceNode().hasProperty("core_migration_nr");
+        if (isCleanInstall) {
             logger.info("Starting with a fresh DB -- Setting migration number to 0");
             setMigrationNr(0);
-            return true;
         }
-        return false;
+        // 7) upgrade index
+        int indexVersion = (Integer) graphDb.getReferenceNode().getProperty("index_version", 1);
+        if (indexVersion < INDEX_VERSION) {
+            if (isCleanInstall) {
+                graphDb.getReferenceNode().setProperty("index_version", INDEX_VERSION);
+            } else {
+                upgradeTopics("index", "index_version", INDEX_VERSION, new Reindex());
+            }
+        }
+        // 8) upgrade labels
+        int labelVersion = (Integer) graphDb.getReferenceNode().getProperty("label_version", 1);
+        if (labelVersion < LABEL_VERSION) {
+            if (isCleanInstall) {
+                graphDb.getReferenceNode().setProperty("label_version", LABEL_VERSION);
+            } else {
+                upgradeTopics("labels", "label_version", LABEL_VERSION, new StoreLabel());
+            }
+        }
+        return isCleanInstall;
     }
 
     @Override
     public void shutdown() {
         logger.info("Shutdown DB and indexing services");
+        shutdownRelabelExecutor();
         if (index != null) {
             index.shutdown();
             fulltextIndex.shutdown();
@@ -431,103 +799,425 @@ public class Neo4jStorage implements Storage {
     private Topic buildTopic(Node node, boolean includeProperties) {
         // 1) calculate type
         String typeUri = getTypeUri(node);
-        // 2) calculate label
-        String label;
-        TopicType topicType = getTopicType(typeUri);
-        String topicLabelFieldUri = (String) topicType.getProperty("topic_label_field_uri", null);
-        if (topicLabelFieldUri != null) {
-            label = node.getProperty(topicLabelFieldUri).toString();    // Note: property value can be a number as well
-        } else {
-            if (topicType.getDataFields().size() > 0) {
-                // use value of first data field
-                String fieldUri = topicType.getDataField(0).getUri();
-                label = node.getProperty(fieldUri).toString();          // Note: property value can be a number as well
-            } else {
-                // there are no data fields -> the label can't be set
-                label = "?";
-            }
+        // 2) read label
+        String label = (String) node.getProperty(KEY_TOPIC_LABEL, null);
+        if (label == null) {
+            // the topic was stored before its label and the label upgrade is not complete yet (see StoreLabel)
+            label = calculateLabel(node, getTopicType(typeUri));
         }
         //
         Map properties = includeProperties ? getProperties(node) : null;
         return new Topic(node.getId(), typeUri, label, properties);
     }
 
-    // --- Relations ---
-
     /**
-     * Builds a DeepaMehta relation from a Neo4j relationship.
+     * Builds a DeepaMehta {@link Topic} from a Neo4j node. Only the given properties are fetched.
      *
-     * @param   includeProperties   if true, the relation properties are fetched.
+     * @param   fieldUris   the URIs of the properties to fetch. Properties the topic doesn't have are skipped.
      */
-    private Relation buildRelation(Relationship rel, boolean includeProperties) {
-        Map properties = includeProperties ? getProperties(rel) : null;
-        return new Relation(rel.getId(), rel.getType().name(),
-            rel.getStartNode().getId(), rel.getEndNode().getId(), properties);
+    private Topic buildTopic(Node node, Set<String> fieldUris) {
+        Topic topic = buildTopic(node, false);
+        topic.setProperties(getProperties(node, fieldUris));
+        return topic;
     }
 
-    private boolean doRelationshipMatches(Relationship rel, Node node, long dstTopicId, String typeId,
-                                                                                        boolean isDirected) {
-        // do nodes match?
-        Node relNode = rel.getOtherNode(node);
-        if (relNode.getId() != dstTopicId) {
-            return false;
+    /**
+     * A cursor is the ID of the last topic of the previous page. Cursors issued by former versions have the format
+     * "&lt;topic ID&gt;:&lt;walk ID&gt;". The walk ID is ignored.
+     */
+    private long parseCursor(String cursor) {
+        try {
+            int i = cursor.indexOf(':');
+            return Long.parseLong(i != -1 ? cursor.substring(0, i) : cursor);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("\"" + cursor + "\" is not a valid cursor", e);
         }
-        // apply type filter
-        if (typeId != null && !rel.getType().name().equals(typeId)) {
-            return false;
+    }
+
+    /**
+     * Returns the IDs of the type's topics in an instance bucket which are greater than the given ID, in order.
+     */
+    private List<Long> getInstanceIds(Node typeNode, long bucket, long lastNodeId) {
+        List<Long> ids = new ArrayList();
+        IndexHits<Node> nodes = index.getNodes(KEY_INSTANCE_BUCKET, instanceBucket(typeNode.getId(), bucket));
+        try {
+            for (Node node : nodes) {
+                if (node.getId() > lastNodeId) {
+                    ids.add(node.getId());
+                }
+            }
+        } finally {
+            nodes.close();
         }
-        // apply direction filter
-        if (isDirected && rel.getStartNode().getId() != node.getId()) {
-            return false;
+        Collections.sort(ids);
+        return ids;
+    }
+
+    /**
+     * Indexes a topic in its instance bucket, and keeps track of the type's highest instance bucket. Called when a
+     * topic is created.
+     * <p>
+     * Creating the topic's META_HAS_INSTANCE relationship write-locks the type node until commit. So, the highest
+     * instance bucket is read and written under that lock (like the topic counter, see updateTopicCount()).
+     */
+    private void indexInstance(Node node, Node typeNode) {
+        long bucket = node.getId() >> INSTANCE_BUCKET_BITS;
+        index.index(node, KEY_INSTANCE_BUCKET, instanceBucket(typeNode.getId(), bucket));
+        Long maxBucket = (Long) typeNode.getProperty(KEY_MAX_INSTANCE_BUCKET, null);
+        if (maxBucket == null || bucket > maxBucket) {
+            typeNode.setProperty(KEY_MAX_INSTANCE_BUCKET, bucket);
         }
-        //
-        return true;
     }
 
-    // --- Properties ---
+    // --- Labels ---
 
-    Map getProperties(PropertyContainer container) {
-        Map properties = new HashMap();
-        for (String key : container.getPropertyKeys()) {
-            properties.put(key, container.getProperty(key));
+    /**
+     * Calculates a topic label from the topic's properties.
+     * The label is the value of the type's topic label field. Fallback is the value of the type's first data field.
+     */
+    private String calculateLabel(Node node, TopicType topicType) {
+        String labelFieldUri = getLabelFieldUri(topicType);
+        if (labelFieldUri == null) {
+            // there are no data fields -> the label can't be set
+            return "?";
         }
-        return properties;
+        Object value = node.getProperty(labelFieldUri, null);
+        return value != null ? value.toString() : "?";     // Note: property value can be a number as well
     }
 
-    private void setProperties(PropertyContainer container, Map<String, Object> properties) {
-        String typeUri = null;
-        if (container instanceof Node) {
-            typeUri = getTypeUri((Node) container);
+    /**
+     * Returns the URI of the data field the topic label is calculated from,
+     * or <code>null</code> if the type has no data fields.
+     */
+    String getLabelFieldUri(TopicType topicType) {
+        String topicLabelFieldUri = (String) topicType.getProperty("topic_label_field_uri", null);
+        if (topicLabelFieldUri != null) {
+            return topicLabelFieldUri;
         }
-        setProperties(container, properties, typeUri);
+        if (topicType.getDataFields().size() > 0) {
+            // use first data field
+            return topicType.getDataField(0).getUri();
+        }
+        return null;
     }
 
-    private void setProperties(PropertyContainer container, Map<String, Object> properties, String typeUri) {
-        if (properties == null) {
-            throw new NullPointerException("setProperties() called with properties=null");
+    /**
+     * Stores the topic label along with the topic, and indexes it.
+     * Called whenever a property the label is calculated from is written.
+     */
+    private void updateLabel(Node node, TopicType topicType) {
+        String label = calculateLabel(node, topicType);
+        if (!label.equals(node.getProperty(KEY_TOPIC_LABEL, null))) {
+            node.setProperty(KEY_TOPIC_LABEL, label);
+            index.removeIndex(node, KEY_TOPIC_LABEL);
+            index.index(node, KEY_TOPIC_LABEL, label);
         }
-        for (String key : properties.keySet()) {
-            Object value = properties.get(key);
-            Object oldValue = container.getProperty(key, null);     // null for newly created topics
-            // 1) update DB
-            container.setProperty(key, value);
-            // 2) update index
-            if (container instanceof Node) {
-                // Note: we only index node properties.
-                // Neo4j can't index relationship properties.
-                indexProperty((Node) container, key, value, oldValue, typeUri);
-            }
+    }
+
+    /**
+     * Recalculates the labels of all topics of a type. Called when the type's topic label field changes.
+     * <p>
+     * The topics are relabeled in the background, once the current transaction is committed.
+     * Until then the topics keep their old labels.
+     */
+    void relabelTopics(String typeUri) {
+        RelabelJob job = new RelabelJob(typeUri);
+        Neo4jTransaction tx = currentTx.get();
+        if (tx != null) {
+            tx.afterCommit(job);
+        } else {
+            job.run();
         }
     }
 
-    private void indexProperty(Node node, String key, Object value, Object oldValue, String typeUri) {
-        // Note: we only index instance nodes. Meta nodes (types) are responsible for indexing themself.
-        if (typeUri.equals("de/deepamehta/core/topictype/TopicType")) {
-            return;
+    private class RelabelJob implements Runnable {
+
+        private String typeUri;
+
+        private RelabelJob(String typeUri) {
+            this.typeUri = typeUri;
+        }
+
+        @Override
+        public void run() {
+            relabelExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    relabel();
+                }
+            });
+        }
+
+        private void relabel() {
+            logger.info("### Relabeling topics of type \"" + typeUri + "\"");
+            int count = 0;
+            de.deepamehta.core.storage.Transaction tx = beginTx();
+            try {
+                TopicType topicType = getTopicType(typeUri);
+                for (Node node : getMetaClass(typeUri).getDirectInstances()) {
+                    updateLabel(node, topicType);
+                    // commit in chunks
+                    if (++count % RELABEL_CHUNK_SIZE == 0) {
+                        tx.success();
+                        tx.finish();
+                        tx = beginTx();
+                    }
+                }
+                tx.success();
+                logger.info("### " + count + " topics of type \"" + typeUri + "\" relabeled");
+            } catch (Exception e) {
+                logger.warning("Relabeling topics of type \"" + typeUri + "\" failed (" + count + " done): " + e);
+            } finally {
+                tx.finish();
+            }
+        }
+
+        // ---
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof RelabelJob && ((RelabelJob) o).typeUri.equals(typeUri);
+        }
+
+        @Override
+        public int hashCode() {
+            return typeUri.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return "relabel job for type \"" + typeUri + "\"";
+        }
+    }
+
+    private void shutdownRelabelExecutor() {
+        relabelExecutor.shutdown();
+        try {
+            if (!relabelExecutor.awaitTermination(60, TimeUnit.SECONDS)) {
+                logger.warning("Relabel jobs not finished properly");
+            }
+        } catch (InterruptedException e) {
+            logger.warning("Interrupted while waiting for relabel jobs");
+        }
+    }
+
+    /**
+     * Builds a DeepaMehta {@link RelatedTopic} from a traversal path.
+     */
+    private RelatedTopic buildRelatedTopic(Path path, Set<String> fieldUris) {
+        RelatedTopic relTopic = new RelatedTopic();
+        relTopic.setTopic(buildTopic(path.endNode(), fieldUris));
+        // Note: the relation properties remain uninitialzed here.
+        // It is up to the plugins to provide selected properties (see providePropertiesHook()).
+        relTopic.setRelation(buildRelation(path.lastRelationship(), false));
+        relTopic.setDepth(path.length());
+        return relTopic;
+    }
+
+    // --- Relations ---
+
+    /**
+     * Builds a DeepaMehta relation from a Neo4j relationship.
+     *
+     * @param   includeProperties   if true, the relation properties are fetched.
+     */
+    private Relation buildRelation(Relationship rel, boolean includeProperties) {
+        Map properties = includeProperties ? getProperties(rel) : null;
+        return new Relation(rel.getId(), rel.getType().name(),
+            rel.getStartNode().getId(), rel.getEndNode().getId(), properties);
+    }
+
+    /**
+     * Returns the relationships between two nodes which match the type and direction filter.
+     * <p>
+     * The relationships of both nodes are iterated alternately until one of the nodes has no more relationships.
+     * That node's matches are the result. So, the cost of a lookup is bound by the node with fewer relationships,
+     * e.g. when looking up the relation between an ordinary topic and a workspace topic with many relations.
+     * Furthermore, if a type and/or direction filter is given, only the relationships of that type and direction are
+     * iterated.
+     */
+    private List<Relationship> findRelationships(long srcTopicId, long dstTopicId, String typeId,
+                                                                                   boolean isDirected) {
+        Node srcNode = graphDb.getNodeById(srcTopicId);
+        Node dstNode = graphDb.getNodeById(dstTopicId);
+        Iterator<Relationship> srcRels = getRelationships(srcNode, typeId,
+            isDirected ? Direction.OUTGOING : Direction.BOTH).iterator();
+        Iterator<Relationship> dstRels = getRelationships(dstNode, typeId,
+            isDirected ? Direction.INCOMING : Direction.BOTH).iterator();
+        //
+        List<Relationship> srcMatches = new ArrayList();
+        List<Relationship> dstMatches = new ArrayList();
+        while (srcRels.hasNext() && dstRels.hasNext()) {
+            Relationship rel = srcRels.next();
+            if (doRelationshipMatches(rel, srcTopicId, dstTopicId, typeId, isDirected)) {
+                srcMatches.add(rel);
+            }
+            rel = dstRels.next();
+            if (doRelationshipMatches(rel, srcTopicId, dstTopicId, typeId, isDirected)) {
+                dstMatches.add(rel);
+            }
+        }
+        return !srcRels.hasNext() ? srcMatches : dstMatches;
+    }
+
+    private Iterable<Relationship> getRelationships(Node node, String typeId, Direction direction) {
+        if (typeId != null) {
+            RelationshipType relType = getRelationshipType(typeId);
+            if (relType == null) {
+                // there are no relationships of an unknown type
+                return Collections.EMPTY_LIST;
+            }
+            return node.getRelationships(relType, direction);
+        } else {
+            return node.getRelationships(direction);
+        }
+    }
+
+    private boolean doRelationshipMatches(Relationship rel, long srcTopicId, long dstTopicId, String typeId,
+                                                                                             boolean isDirected) {
+        long startNodeId = rel.getStartNode().getId();
+        long endNodeId = rel.getEndNode().getId();
+        // do nodes match? (apply direction filter)
+        if (!(startNodeId == srcTopicId && endNodeId == dstTopicId) &&
+            !(startNodeId == dstTopicId && endNodeId == srcTopicId && !isDirected)) {
+            return false;
+        }
+        // apply type filter
+        if (typeId != null && !rel.getType().name().equals(typeId)) {
+            return false;
+        }
+        //
+        return true;
+    }
+
+    // ---
+
+    /**
+     * Removes duplicates from an ID array while preserving the order of first occurrence.
+     */
+    private Set<Long> distinct(long[] ids) {
+        Set<Long> distinctIds = new LinkedHashSet();
+        for (long id : ids) {
+            distinctIds.add(id);
+        }
+        return distinctIds;
+    }
+
+    // --- Properties ---
+
+    Map getProperties(PropertyContainer container) {
+        Map properties = new HashMap();
+        for (String key : container.getPropertyKeys()) {
+            // Note: the stored topic label, data field order, topic counter, highest instance bucket, and uniqueness
+            // lock are not topic properties
+            if (!key.equals(KEY_TOPIC_LABEL) && !key.equals(KEY_FIELD_ORDER) && !key.equals(KEY_TOPIC_COUNT) &&
+                    !key.equals(KEY_MAX_INSTANCE_BUCKET) && !key.equals(KEY_UNIQUENESS_LOCK)) {
+                properties.put(key, container.getProperty(key));
+            }
+        }
+        return properties;
+    }
+
+    private Map getProperties(PropertyContainer container, Set<String> keys) {
+        Map properties = new HashMap();
+        for (String key : keys) {
+            Object value = container.getProperty(key, null);
+            if (value != null) {
+                properties.put(key, value);
+            }
+        }
+        return properties;
+    }
+
+    private void setProperties(PropertyContainer container, Map<String, Object> properties) {
+        String typeUri = null;
+        if (container instanceof Node) {
+            typeUri = getTypeUri((Node) container);
+        }
+        setProperties(container, properties, typeUri);
+    }
+
+    private void setProperties(PropertyContainer container, Map<String, Object> properties, String typeUri) {
+        if (properties == null) {
+            throw new NullPointerException("setProperties() called with properties=null");
+        }
+        for (String key : properties.keySet()) {
+            Object value = properties.get(key);
+            Object oldValue = container.getProperty(key, null);     // null for newly created topics
+            if (value.equals(oldValue)) {
+                continue;       // unchanged -- neither the DB nor the index needs an update
+            }
+            // 0) check uniqueness
+            if (container instanceof Node) {
+                checkUniqueness((Node) container, key, value, typeUri);
+            }
+            // 1) update DB
+            container.setProperty(key, value);
+            // 2) update index
+            if (container instanceof Node) {
+                // Note: we only index node properties.
+                // Neo4j can't index relationship properties.
+                indexProperty((Node) container, key, value, oldValue, typeUri);
+            }
+        }
+        //
+        if (container instanceof Node) {
+            if (typeUri.equals("de/deepamehta/core/topictype/TopicType")) {
+                updateTypeProperties((Node) container, properties);
+            } else {
+                TopicType topicType = getTopicType(typeUri);
+                if (properties.containsKey(getLabelFieldUri(topicType))) {
+                    updateLabel((Node) container, topicType);
+                }
+            }
+        }
+    }
+
+    /**
+     * Called when properties of a type node are written. Keeps the cached type in sync regarding the topic label
+     * field, and relabels the type's topics when the topic label field changes.
+     */
+    private void updateTypeProperties(Node typeNode, Map<String, Object> properties) {
+        if (!properties.containsKey("topic_label_field_uri")) {
+            return;
+        }
+        String typeUri = (String) typeNode.getProperty("de/deepamehta/core/property/TypeURI");
+        TopicType topicType = getTopicType(typeUri);
+        String oldLabelFieldUri = getLabelFieldUri(topicType);
+        topicType.setProperty("topic_label_field_uri", properties.get("topic_label_field_uri"));
+        String labelFieldUri = getLabelFieldUri(topicType);
+        if (labelFieldUri != null && !labelFieldUri.equals(oldLabelFieldUri)) {
+            relabelTopics(typeUri);
+        }
+    }
+
+    private void indexProperty(Node node, String key, Object value, Object oldValue, String typeUri) {
+        // Note: we only index instance nodes. Meta nodes (types) are responsible for indexing themself.
+        if (typeUri.equals("de/deepamehta/core/topictype/TopicType")) {
+            return;
+        }
+        //
+        Neo4jTransaction tx = currentTx.get();
+        if (tx != null) {
+            tx.bufferIndexUpdate(node, key, value, oldValue, typeUri);
+        } else {
+            writeIndex(node, key, value, oldValue, typeUri);
+        }
+    }
+
+    /**
+     * Writes an index update. Called by the transaction when flushing its buffered index updates.
+     */
+    void writeIndex(Node node, String key, Object value, Object oldValue, String typeUri) {
+        // remove old value and index new value
+        DataField dataField = getTopicType(typeUri).getDataField(key);
+        String indexingMode = dataField.getIndexingMode();
+        if (isTypedValueIndexed(dataField)) {
+            if (oldValue != null) {
+                index.removeIndex(node, KEY_TYPED_VALUE, typedValue(typeUri, key, oldValue));  // remove old
+            }
+            index.index(node, KEY_TYPED_VALUE, typedValue(typeUri, key, value));               // index new
         }
-        // remove old value and index new value
-        DataField dataField = getTopicType(typeUri).getDataField(key);
-        String indexingMode = dataField.getIndexingMode();
         if (indexingMode.equals("OFF")) {
             return;
         } else if (indexingMode.equals("KEY")) {
@@ -537,22 +1227,66 @@ public class Neo4jStorage implements Storage {
             // Note: all the topic's FULLTEXT properties are indexed under the same key ("default").
             // So, when removing from index we must explicitley give the old value.
             if (oldValue != null) {
-                fulltextIndex.removeIndex(node, "default", oldValue);   // remove old
+                fulltextIndex.removeIndex(node, "default", fulltextValue(oldValue, typeUri));   // remove old
             }
-            fulltextIndex.index(node, "default", value);                // index new
+            fulltextIndex.index(node, "default", fulltextValue(value, typeUri));                // index new
         } else if (indexingMode.equals("FULLTEXT_KEY")) {
-            fulltextIndex.removeIndex(node, key);                       // remove old
-            fulltextIndex.index(node, key, value);                      // index new
+            fulltextIndex.removeIndex(node, key);                                               // remove old
+            fulltextIndex.index(node, key, value);                                              // index new
         } else {
             throw new RuntimeException("Data field \"" + key + "\" of type definition \"" +
                 typeUri + "\" has unexpectd indexing mode: \"" + indexingMode + "\"");
         }
     }
 
+    /**
+     * Re-indexes the values of a data field after its indexing mode or uniqueness has changed: removes the entries
+     * of the old indexing mode, writes the entries of the new one, and checks the values for uniqueness if the data
+     * field is unique now. Runs in the caller's transaction, so if a value is not unique the data field is not
+     * updated at all.
+     */
+    private void reindexDataField(String typeUri, DataField dataField, String oldIndexingMode,
+                                                                       boolean wasTypedValueIndexed) {
+        String key = dataField.getUri();
+        logger.info("Re-indexing data field \"" + key + "\" of topic type \"" + typeUri + "\"");
+        Map<String, Long> values = new HashMap();   // the typed values checked for uniqueness, hashed to the node ID
+        for (Node node : getMetaClass(typeUri).getDirectInstances()) {
+            Object value = node.getProperty(key, null);
+            if (value == null) {
+                continue;
+            }
+            // remove old
+            if (wasTypedValueIndexed) {
+                index.removeIndex(node, KEY_TYPED_VALUE, typedValue(typeUri, key, value));
+            }
+            if (oldIndexingMode.equals("KEY")) {
+                index.removeIndex(node, key);
+            } else if (oldIndexingMode.equals("FULLTEXT")) {
+                fulltextIndex.removeIndex(node, "default", fulltextValue(value, typeUri));
+            } else if (oldIndexingMode.equals("FULLTEXT_KEY")) {
+                fulltextIndex.removeIndex(node, key);
+            }
+            // index new
+            writeIndex(node, key, value, null, typeUri);
+            // check uniqueness
+            if (dataField.getUnique()) {
+                Long nodeId = values.put(typedValue(typeUri, key, value), node.getId());
+                if (nodeId != null) {
+                    throw new RuntimeException("Uniqueness violation: topics " + nodeId + " and " + node.getId() +
+                        " of type \"" + typeUri + "\" have the same value (" + key + "=" + value + ")");
+                }
+            }
+        }
+    }
+
     /**
      * Completely removes a topic from the index. Called when a topic is deleted.
      */
     private void removeFromIndex(Node node) {
+        Neo4jTransaction tx = currentTx.get();
+        if (tx != null) {
+            tx.discardIndexUpdates(node);
+        }
         // Note: we don't know the index mode so we just remove for every mode.
         // (In conjunction with node deletion it would not be easy to tell the index mode.)
         for (String key : node.getPropertyKeys()) {
@@ -560,11 +1294,460 @@ public class Neo4jStorage implements Storage {
             fulltextIndex.removeIndex(node, key);
         }
         fulltextIndex.removeIndex(node, "default");
+        index.removeIndex(node, KEY_TYPED_VALUE);
+        index.removeIndex(node, KEY_INSTANCE_BUCKET);
+    }
+
+    /**
+     * Completely removes a topic of the given type from the index. Other than {@link #removeFromIndex(Node)} only
+     * the entries the type's indexing modes have created are removed.
+     */
+    private void removeFromIndex(Node node, String typeUri) {
+        if (typeUri.equals("de/deepamehta/core/topictype/TopicType")) {
+            removeFromIndex(node);
+            return;
+        }
+        Neo4jTransaction tx = currentTx.get();
+        if (tx != null) {
+            tx.discardIndexUpdates(node);
+        }
+        TopicType topicType = getTopicType(typeUri);
+        boolean hasFulltext = false;
+        boolean hasTypedValue = false;
+        for (String key : node.getPropertyKeys()) {
+            if (!topicType.hasDataField(key)) {
+                continue;
+            }
+            DataField dataField = topicType.getDataField(key);
+            String indexingMode = dataField.getIndexingMode();
+            if (indexingMode.equals("KEY")) {
+                index.removeIndex(node, key);
+            } else if (indexingMode.equals("FULLTEXT")) {
+                hasFulltext = true;
+            } else if (indexingMode.equals("FULLTEXT_KEY")) {
+                fulltextIndex.removeIndex(node, key);
+            }
+            hasTypedValue |= isTypedValueIndexed(dataField);
+        }
+        if (hasFulltext) {
+            fulltextIndex.removeIndex(node, "default");
+        }
+        if (hasTypedValue) {
+            index.removeIndex(node, KEY_TYPED_VALUE);
+        }
+        if (node.hasProperty(KEY_TOPIC_LABEL)) {
+            index.removeIndex(node, KEY_TOPIC_LABEL);
+        }
+        index.removeIndex(node, KEY_INSTANCE_BUCKET);
+    }
+
+    /**
+     * Writes the index updates buffered by the current transaction. Called before the index is queried, so the
+     * query sees the transaction's own writes.
+     */
+    private void flushIndexUpdates() {
+        Neo4jTransaction tx = currentTx.get();
+        if (tx != null) {
+            tx.flushIndexUpdates();
+        }
+    }
+
+    /**
+     * Throws an exception if the data field is declared unique and another topic of the same type already has
+     * the given value. This is a single probe of the typed value index.
+     */
+    private void checkUniqueness(Node node, String key, Object value, String typeUri) {
+        if (typeUri.equals("de/deepamehta/core/topictype/TopicType")) {
+            return;
+        }
+        DataField dataField = getTopicType(typeUri).getDataField(key);
+        if (!dataField.getUnique()) {
+            return;
+        }
+        // Note: the type node is write-locked until commit. Otherwise 2 concurrent transactions could both pass the
+        // check before either has written its value. Once the lock is acquired the values committed by other
+        // transactions are visible in the index.
+        getMetaClass(typeUri).node().setProperty(KEY_UNIQUENESS_LOCK, true);
+        flushIndexUpdates();
+        IndexHits<Node> nodes = index.getNodes(KEY_TYPED_VALUE, typedValue(typeUri, key, value));
+        try {
+            for (Node n : nodes) {
+                if (n.getId() != node.getId()) {
+                    throw new RuntimeException("Uniqueness violation: topic " + n.getId() + " of type \"" + typeUri +
+                        "\" has the same value (" + key + "=" + value + ")");
+                }
+            }
+        } finally {
+            nodes.close();
+        }
+    }
+
+    private boolean isTypedValueIndexed(DataField dataField) {
+        return !dataField.getIndexingMode().equals("OFF") || dataField.getUnique();
+    }
+
+    /**
+     * Returns the value to be put in the typed value index: the type term, the property key and the property value.
+     * Unlike the property key itself the typed value index is shared by all keys, so a lookup by type, key, and
+     * value is a single exact-match probe.
+     */
+    private String typedValue(String typeUri, String key, Object value) {
+        return typedValue(getMetaClass(typeUri).node().getId(), key, value);
+    }
+
+    // ---
+
+    /**
+     * Queries the fulltext index. When searching all fields ("default" key) the type restriction is part of the
+     * Lucene query, so only the requested hits are fetched. A FULLTEXT_KEY field is indexed without type term
+     * (it is used for exact-match lookups as well), so here the hits are filtered by type while iterating.
+     *
+     * @param   topicTypeUris   Restricts the search to topics of these types. If null or empty all types are searched,
+     *                          except search results (a search should not find other searches).
+     * @param   maxResults      The maximum number of nodes to return. 0 means unlimited.
+     * @param   offset          The number of hits to skip.
+     */
+    private List<Node> searchNodes(String searchTerm, String fieldUri, boolean wholeWord, List<String> topicTypeUris,
+                                                                                          int maxResults, int offset) {
+        String query = searchQuery(searchTerm, wholeWord);
+        if (fieldUri == null) query = "+(" + query + ")" + typeQuery(topicTypeUris);
+        if (fieldUri == null) fieldUri = "default";
+        flushIndexUpdates();
+        IndexHits<Node> hits = fulltextIndex.getNodes(fieldUri, query);
+        try {
+            logger.info("Searching \"" + query + "\" in field \"" + fieldUri + "\" => " + hits.size() + " nodes");
+            List<Node> nodes = new ArrayList();
+            int skipped = 0;
+            for (Node node : hits) {
+                if (!fieldUri.equals("default") && !isSearchable(node, topicTypeUris)) {
+                    continue;
+                }
+                if (skipped < offset) {
+                    skipped++;
+                    continue;
+                }
+                nodes.add(node);
+                if (nodes.size() == maxResults) {
+                    break;
+                }
+            }
+            logger.info("Returning " + nodes.size() + " nodes (offset=" + offset + ", maxResults=" + maxResults + ")");
+            return nodes;
+        } finally {
+            hits.close();
+        }
+    }
+
+    private boolean isSearchable(Node node, List<String> topicTypeUris) {
+        String typeUri = getTypeUri(node);
+        if (topicTypeUris == null || topicTypeUris.isEmpty()) {
+            return !typeUri.equals("de/deepamehta/core/topictype/SearchResult");
+        }
+        return topicTypeUris.contains(typeUri);
+    }
+
+    /**
+     * Turns a user search term into a Lucene query. The search term is taken literally: query syntax characters are
+     * escaped and control characters are dropped. So, the query can only match the indexed values, never the type
+     * terms.
+     *
+     * @param   wholeWord   If false the last word of the search term is regarded as begin-of-word substring.
+     */
+    private String searchQuery(String searchTerm, boolean wholeWord) {
+        StringBuilder query = new StringBuilder();
+        for (char c : searchTerm.toCharArray()) {
+            if (Character.isISOControl(c)) {
+                continue;
+            }
+            if (QUERY_SYNTAX_CHARS.indexOf(c) != -1) {
+                query.append('\\');
+            }
+            query.append(c);
+        }
+        if (!wholeWord) {
+            query.append('*');
+        }
+        return query.toString();
+    }
+
+    private String typeQuery(List<String> topicTypeUris) {
+        if (topicTypeUris == null || topicTypeUris.isEmpty()) {
+            // TODO: drop this filter. Items not intended for being find should not be indexed at all. Model change
+            // required: the indexing mode must be specified per topic type/data field pair instead per data field.
+            MetaModelClass metaClass = getMetaModelClass("de/deepamehta/core/topictype/SearchResult");
+            return metaClass != null ? " -" + typeTerm(metaClass) : "";
+        }
+        StringBuilder query = new StringBuilder(" +(");
+        for (String typeUri : topicTypeUris) {
+            query.append(" ").append(typeTerm(getMetaClass(typeUri)));
+        }
+        return query.append(")").toString();
+    }
+
+    /**
+     * Returns the value to be put in the fulltext index: the property value followed by the type term.
+     * The type term is derived from the type node's ID (not from the type URI) so it is not affected by renaming
+     * the type.
+     */
+    private String fulltextValue(Object value, String typeUri) {
+        return fulltextValue(value, getMetaClass(typeUri).node().getId());
+    }
+
+    private String typeTerm(MetaModelClass metaClass) {
+        return typeTerm(metaClass.node().getId());
+    }
+
+    // Note: the index value formats are package private in order to let the Neo4jBatchImporter write index entries
+    // the storage can read.
+
+    static String instanceBucket(long typeNodeId, long bucket) {
+        return typeNodeId + "/" + bucket;
+    }
+
+    static String typedValue(long typeNodeId, String key, Object value) {
+        return "dmtype" + typeNodeId + "|" + key + "|" + valueKind(value) + "|" + value;
+    }
+
+    /**
+     * Distinguishes values whose string representation is equal, e.g. 5 and "5". Integral numbers are of the same
+     * kind regardless of their class, as are floating point numbers.
+     */
+    private static char valueKind(Object value) {
+        if (value instanceof String) {
+            return 's';
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short ||
+                   value instanceof Byte) {
+            return 'i';
+        } else if (value instanceof Float || value instanceof Double) {
+            return 'f';
+        } else if (value instanceof Boolean) {
+            return 'b';
+        } else {
+            return 'o';
+        }
+    }
+
+    static String fulltextValue(Object value, long typeNodeId) {
+        return value + " " + typeTerm(typeNodeId);
+    }
+
+    static String typeTerm(long typeNodeId) {
+        return TYPE_TERM_PREFIX + typeNodeId;
+    }
+
+    /**
+     * Applies an upgrade step to all topics of an existing DB. Called by {@link #init} for a DB which predates the
+     * current storage format.
+     * <p>
+     * The upgrade runs once the init transaction is committed, and the topics are processed in chunks of
+     * UPGRADE_CHUNK_SIZE topics per transaction. The new version is recorded at the reference node in the last
+     * transaction. So, an interrupted upgrade is repeated at next startup. Upgrade steps must be idempotent.
+     */
+    private void upgradeTopics(final String what, final String versionKey, final int version,
+                                                                           final TopicUpgrade upgrade) {
+        afterCommit(new Runnable() {
+            @Override
+            public void run() {
+                logger.info("Upgrading " + what + " to version " + version);
+                int count = 0;
+                de.deepamehta.core.storage.Transaction tx = beginTx();
+                try {
+                    for (MetaModelClass metaClass : getAllMetaClasses()) {
+                        String typeUri = metaClass.getName();
+                        if (typeUri.equals("de/deepamehta/core/topictype/TopicType")) {
+                            continue;
+                        }
+                        TopicType topicType = getTopicType(typeUri);
+                        for (Node node : metaClass.getDirectInstances()) {
+                            upgrade.upgrade(node, typeUri, topicType);
+                            // commit in chunks
+                            if (++count % UPGRADE_CHUNK_SIZE == 0) {
+                                tx.success();
+                                tx.finish();
+                                tx = beginTx();
+                            }
+                        }
+                    }
+                    graphDb.getReferenceNode().setProperty(versionKey, version);
+                    tx.success();
+                    logger.info("Upgrading " + what + " complete (" + count + " topics)");
+                } catch (Exception e) {
+                    throw new RuntimeException("Upgrading " + what + " failed (" + count + " topics done). It is " +
+                        "repeated at next startup", e);
+                } finally {
+                    tx.finish();
+                }
+            }
+        });
+    }
+
+    /**
+     * Stores the number of topics at every type node (see {@link #KEY_TOPIC_COUNT}). Called by {@link #init} for a
+     * DB whose types predate the topic counters.
+     * <p>
+     * The upgrade runs once the init transaction is committed, one transaction per type. The new type format version
+     * is recorded at the reference node in the last transaction. So, an interrupted upgrade is repeated at next
+     * startup.
+     */
+    private void upgradeTopicCounts() {
+        afterCommit(new Runnable() {
+            @Override
+            public void run() {
+                logger.info("Upgrading types to format version " + TYPE_FORMAT_VERSION);
+                int count = 0;
+                de.deepamehta.core.storage.Transaction tx = beginTx();
+                try {
+                    for (MetaModelClass metaClass : getAllMetaClasses()) {
+                        if (metaClass.getName().equals("de/deepamehta/core/topictype/TopicType")) {
+                            continue;
+                        }
+                        // Note: the counter is written before the topics are counted. This write-locks the type
+                        // node, so a topic created concurrently is either counted here or added to the counter.
+                        Node typeNode = metaClass.node();
+                        typeNode.setProperty(KEY_TOPIC_COUNT, 0);
+                        typeNode.setProperty(KEY_TOPIC_COUNT, metaClass.getDirectInstances().size());
+                        tx.success();
+                        tx.finish();
+                        tx = beginTx();
+                        count++;
+                    }
+                    graphDb.getReferenceNode().setProperty("type_format_version", TYPE_FORMAT_VERSION);
+                    tx.success();
+                    logger.info("Upgrading types complete (" + count + " types)");
+                } catch (Exception e) {
+                    throw new RuntimeException("Upgrading types failed (" + count + " types done). It is " +
+                        "repeated at next startup", e);
+                } finally {
+                    tx.finish();
+                }
+            }
+        });
+    }
+
+    /**
+     * Adjusts the topic counter of a type. Called once instance relationships are created resp. deleted.
+     * <p>
+     * Creating resp. deleting a META_HAS_INSTANCE relationship write-locks the type node until commit. So, the
+     * counter is read and written under that lock and no concurrent update is lost. A type which is not upgraded
+     * yet has no counter and is skipped (see {@link #upgradeTopicCounts}).
+     */
+    private void updateTopicCount(Node typeNode, int delta) {
+        Integer count = (Integer) typeNode.getProperty(KEY_TOPIC_COUNT, null);
+        if (count != null) {
+            typeNode.setProperty(KEY_TOPIC_COUNT, count + delta);
+        }
+    }
+
+    /**
+     * An upgrade step applied to every topic. See {@link #upgradeTopics}.
+     */
+    private interface TopicUpgrade {
+        void upgrade(Node node, String typeUri, TopicType topicType);
+    }
+
+    /**
+     * Re-indexes the properties of a topic, and the topic in its instance bucket. Every entry is removed before it is
+     * indexed again, including entries in a former format.
+     */
+    private class Reindex implements TopicUpgrade {
+
+        @Override
+        public void upgrade(Node node, String typeUri, TopicType topicType) {
+            index.removeIndex(node, KEY_TYPED_VALUE);
+            fulltextIndex.removeIndex(node, "default");
+            index.removeIndex(node, KEY_INSTANCE_BUCKET);
+            indexInstance(node, getMetaClass(typeUri).node());
+            for (DataField dataField : topicType.getDataFields()) {
+                String key = dataField.getUri();
+                Object value = node.getProperty(key, null);
+                if (value != null) {
+                    writeIndex(node, key, value, null, typeUri);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stores the label of a topic which was stored before its label. Topics which have a label already are skipped.
+     */
+    private class StoreLabel implements TopicUpgrade {
+
+        @Override
+        public void upgrade(Node node, String typeUri, TopicType topicType) {
+            if (!node.hasProperty(KEY_TOPIC_LABEL)) {
+                updateLabel(node, topicType);
+            }
+        }
+    }
+
+    /**
+     * Converts the data field order of all topic types from a chain of SEQUENCE relationships to a property of the
+     * type node (see {@link #KEY_FIELD_ORDER}). Called once when a DB is opened whose types predate type format
+     * version 2. Types which have the property already are skipped.
+     */
+    private void upgradeFieldOrder() {
+        logger.info("Upgrading types to format version 2");
+        int count = 0;
+        for (MetaModelClass metaClass : getAllMetaClasses()) {
+            Node typeNode = metaClass.node();
+            if (typeNode.hasProperty(KEY_FIELD_ORDER)) {
+                continue;
+            }
+            List<Long> fieldNodeIds = new ArrayList();
+            List<Relationship> sequenceRels = new ArrayList();
+            for (Path path : getFieldSequence(typeNode, metaClass.getName())) {
+                fieldNodeIds.add(path.endNode().getId());
+                sequenceRels.add(path.lastRelationship());
+            }
+            long[] fieldOrder = new long[fieldNodeIds.size()];
+            for (int i = 0; i < fieldOrder.length; i++) {
+                fieldOrder[i] = fieldNodeIds.get(i);
+            }
+            typeNode.setProperty(KEY_FIELD_ORDER, fieldOrder);
+            for (Relationship rel : sequenceRels) {
+                rel.delete();
+            }
+            count++;
+        }
+        logger.info("Types upgraded (" + count + " types)");
+    }
+
+    /**
+     * Traverses the (obsolete) data field sequence of a topic type.
+     */
+    private Iterable<Path> getFieldSequence(Node typeNode, String typeUri) {
+        TraversalDescription desc = Traversal.description();
+        desc = desc.relationships(RelType.SEQUENCE_START, Direction.OUTGOING);
+        desc = desc.relationships(RelType.SEQUENCE,       Direction.OUTGOING);
+        // A custom filter is used to return only the nodes of this topic type's individual path.
+        // The path is recognized by the "type_uri" property of the constitutive relationships.
+        desc = desc.filter(new SequenceReturnFilter(typeUri));
+        // We need breadth first in order to get the nodes in proper sequence order.
+        // (default is not breadth first, but probably depth first).
+        desc = desc.breadthFirst();
+        // We need to traverse a node more than once because it may be involved in many sequences.
+        // (default uniqueness is not RELATIONSHIP_GLOBAL, but probably NODE_GLOBAL).
+        desc = desc.uniqueness(Uniqueness.RELATIONSHIP_GLOBAL);
+        //
+        return desc.traverse(typeNode);
     }
 
     // --- Types ---
 
+    /**
+     * Returns the topic type URI of the node. Once determined, a node's type is served from the node type cache.
+     */
     private String getTypeUri(Node node) {
+        long nodeId = node.getId();
+        String typeUri = nodeTypeCache.get(nodeId);
+        if (typeUri == null) {
+            typeUri = readTypeUri(node);
+            nodeTypeCache.put(nodeId, typeUri);
+        }
+        return typeUri;
+    }
+
+    private String readTypeUri(Node node) {
         // FIXME: meta-types must be detected manually
         if (node.getProperty("de/deepamehta/core/property/TypeURI", null) != null) {
             // FIXME: a more elaborated criteria is required, e.g. an incoming TOPIC_TYPE relation
@@ -601,21 +1784,43 @@ public class Neo4jStorage implements Storage {
 
     // ---
 
+    /**
+     * @return  the relationship type, or <code>null</code> if there is no relationship of that type.
+     */
     private RelationshipType getRelationshipType(String typeId) {
-        try {
-            // 1st try: static types are returned directly
-            return RelType.valueOf(typeId);
-        } catch (IllegalArgumentException e) {
-            // 2nd try: search through dynamic types
-            for (RelationshipType relType : graphDb.getRelationshipTypes()) {
-                if (relType.name().equals(typeId)) {
-                    return relType;
-                }
-            }
-            // Last resort: create new type
+        return relTypes.get(typeId);
+    }
+
+    /**
+     * Returns the relationship type, and registers it if it is unknown. Called only when a relationship of that type
+     * is about to be created. So, reads with arbitrary type names don't grow the registry.
+     */
+    private RelationshipType createRelationshipType(String typeId) {
+        RelationshipType relType = relTypes.get(typeId);
+        if (relType == null) {
+            // Note: the type is created in the DB along with the first relationship of that type
             logger.info("### Relation type \"" + typeId + "\" does not exist -- Creating it dynamically");
-            return DynamicRelationshipType.withName(typeId);
+            relType = DynamicRelationshipType.withName(typeId);
+            RelationshipType existing = relTypes.putIfAbsent(typeId, relType);
+            if (existing != null) {
+                relType = existing;
+            }
+        }
+        return relType;
+    }
+
+    /**
+     * Preloads the relationship types: the types stored in the DB, and the static types.
+     */
+    private void initRelationshipTypes() {
+        for (RelationshipType relType : graphDb.getRelationshipTypes()) {
+            relTypes.put(relType.name(), relType);
+        }
+        // static types are used directly
+        for (RelType relType : RelType.values()) {
+            relTypes.put(relType.name(), relType);
         }
+        logger.info("Relationship types: " + relTypes.keySet());
     }
 
     // --- Meta Model ---
@@ -633,6 +1838,10 @@ public class Neo4jStorage implements Storage {
         return namespace.getMetaClass(typeUri, false);
     }
 
+    Node getNode(long id) {
+        return graphDb.getNodeById(id);
+    }
+
     Collection<MetaModelClass> getAllMetaClasses() {
         return namespace.getMetaClasses();
     }
@@ -660,25 +1869,69 @@ public class Neo4jStorage implements Storage {
         //     new RelatedTopicsFilter(includeTopicTypes, includeRelTypes, excludeRelTypes));
         //
         TraversalDescription desc = Traversal.description();
-        desc = desc.filter(new RelatedTopicsFilter(includeTopicTypes, includeRelTypes, excludeRelTypes));
+        desc = desc.filter(new RelatedTopicsFilter(includeTopicTypes, includeRelTypes, excludeRelTypes, false));
         desc = desc.prune(new DepthOnePruneEvaluator());
         return desc.traverse(node);
     }
 
+    /**
+     * Applies the filters of a {@link TraversalDefinition} depending on the depth. The traversal is pruned at the
+     * maximum depth, and at nodes which don't pass the filter.
+     */
+    private class TraversalFilter implements Predicate, PruneEvaluator {
+
+        private int maxDepth;
+        private RelatedTopicsFilter[] filters;      // index is depth - 1
+
+        private TraversalFilter(TraversalDefinition traversal) {
+            this.maxDepth = traversal.getMaxDepth();
+            this.filters = new RelatedTopicsFilter[maxDepth];
+            for (int depth = 1; depth <= maxDepth; depth++) {
+                TraversalDefinition.Filter filter = traversal.getFilter(depth);
+                filters[depth - 1] = new RelatedTopicsFilter(filter.getIncludeTopicTypes(),
+                    filter.getIncludeRelTypes(), filter.getExcludeRelTypes(), true);
+            }
+        }
+
+        @Override
+        public boolean accept(Object item) {
+            Path path = (Path) item;
+            return path.length() > 0 && filters[path.length() - 1].accept(path);
+        }
+
+        @Override
+        public boolean pruneAfter(Path path) {
+            return path.length() >= maxDepth || path.length() > 0 && !accept(path);
+        }
+    }
+
     // private class RelatedTopicsFilter implements ReturnableEvaluator {
     private class RelatedTopicsFilter implements Predicate {
 
         private List<String> includeTopicTypes;
         private Map<String, Direction> includeRelTypes;
         private Map<String, Direction> excludeRelTypes;
+        private Map<String, Direction> metaRelTypes = new HashMap();     // always excluded, regardless of the filters
 
-        private RelatedTopicsFilter(List<String> includeTopicTypes,
-                                    List<String> includeRelTypes, List<String> excludeRelTypes) {
+        /**
+         * @param   excludeTypeRels     if true, the relations between topics and their type nodes are excluded.
+         *                              Used for multi-hop traversals: a type node would lead to all its instances.
+         */
+        private RelatedTopicsFilter(List<String> includeTopicTypes, List<String> includeRelTypes,
+                                    List<String> excludeRelTypes, boolean excludeTypeRels) {
             //
             this.includeTopicTypes = includeTopicTypes;
+            // Note: the parsed filters are new maps. The caller's filter lists are never modified.
             this.includeRelTypes = parseRelTypeFilter(includeRelTypes);
             this.excludeRelTypes = parseRelTypeFilter(excludeRelTypes);
-            //
+            // Note: we must exclude the meta-model's namespace and property nodes. They are not intended for
+            // being exposed to the user (additionally, getTypeNode() would fail on these nodes).
+            metaRelTypes.put("META_CLASS", Direction.OUTGOING);
+            metaRelTypes.put("META_HAS_PROPERTY", Direction.INCOMING);
+            metaRelTypes.put("SEQUENCE_START", Direction.INCOMING);
+            if (excludeTypeRels) {
+                metaRelTypes.put("META_HAS_INSTANCE", Direction.BOTH);
+            }
         }
 
         @Override
@@ -693,6 +1946,11 @@ public class Neo4jStorage implements Storage {
             // 1) apply relation type filter
             Relationship rel = path.lastRelationship();     // Relationship rel = position.lastRelationshipTraversed();
             String relTypeName = rel.getType().name();
+            // apply meta-model filter
+            Direction metaDir = metaRelTypes.get(relTypeName);
+            if (metaDir != null && directionMatches(node, rel, metaDir)) {
+                return false;
+            }
             // apply include filter
             if (!includeRelTypes.isEmpty()) {
                 Direction dir = includeRelTypes.get(relTypeName);
@@ -717,7 +1975,7 @@ public class Neo4jStorage implements Storage {
         // ---
 
         private Map parseRelTypeFilter(List<String> relTypes) {
-            Map relTypeFilter = new HashMap();
+            Map<String, Direction> relTypeFilter = new HashMap();
             for (String relFilter : relTypes) {
                 String[] relFilterTokens = relFilter.split(";");
                 String relTypeName = relFilterTokens[0];
@@ -727,11 +1985,23 @@ public class Neo4jStorage implements Storage {
                 } else {
                     dir = Direction.valueOf(relFilterTokens[1]);
                 }
-                relTypeFilter.put(relTypeName, dir);
+                addRelTypeFilter(relTypeFilter, relTypeName, dir);
             }
             return relTypeFilter;
         }
 
+        /**
+         * Adds a relation type to a filter. If the filter has the relation type already the directions are merged,
+         * e.g. OUTGOING and INCOMING result in BOTH.
+         */
+        private void addRelTypeFilter(Map<String, Direction> relTypeFilter, String relTypeName, Direction dir) {
+            Direction existingDir = relTypeFilter.get(relTypeName);
+            if (existingDir != null && existingDir != dir) {
+                dir = Direction.BOTH;
+            }
+            relTypeFilter.put(relTypeName, dir);
+        }
+
         /**
          * Returns true if the relationship has the given direction from the perspective of the node.
          * Prerequisite: the given node is involved in the given relationship.
@@ -749,6 +2019,21 @@ public class Neo4jStorage implements Storage {
         }
     }
 
+    private class SequenceReturnFilter implements Predicate {
+
+        private String typeUri;
+
+        private SequenceReturnFilter(String typeUri) {
+            this.typeUri = typeUri;
+        }
+
+        @Override
+        public boolean accept(Object item) {
+            Path path = (Path) item;
+            return path.length() > 0 && path.lastRelationship().getProperty("type_uri").equals(typeUri);
+        }
+    }
+
     private class DepthOnePruneEvaluator implements PruneEvaluator {
 
         @Override
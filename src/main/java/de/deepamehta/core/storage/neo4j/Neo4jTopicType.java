@@ -3,17 +3,7 @@ package de.deepamehta.core.storage.neo4j;
 import de.deepamehta.core.model.DataField;
 import de.deepamehta.core.model.TopicType;
 
-import org.neo4j.helpers.Predicate;
 import org.neo4j.graphdb.Node;
-import org.neo4j.graphdb.Direction;
-import org.neo4j.graphdb.Path;
-import org.neo4j.graphdb.Relationship;
-// import org.neo4j.graphdb.traversal.Position;
-import org.neo4j.graphdb.traversal.PruneEvaluator;
-import org.neo4j.graphdb.traversal.TraversalDescription;
-import org.neo4j.graphdb.traversal.Traverser;
-import org.neo4j.graphdb.traversal.Uniqueness;
-import org.neo4j.kernel.Traversal;
 import org.neo4j.meta.model.MetaModelClass;
 import org.neo4j.meta.model.MetaModelProperty;
 
@@ -60,6 +50,7 @@ class Neo4jTopicType extends TopicType {
         for (String key : properties.keySet()) {
             typeNode.setProperty(key, properties.get(key));
         }
+        typeNode.setProperty(Neo4jStorage.KEY_TOPIC_COUNT, 0);
         // add data fields
         for (DataField dataField : dataFields) {
             addDataField(dataField);
@@ -75,7 +66,7 @@ class Neo4jTopicType extends TopicType {
         this.metaClass = storage.getMetaClass(typeUri);
         this.typeNode = metaClass.node();
         this.properties = storage.getProperties(typeNode);
-        this.dataFields = readDataFields();
+        setDataFields(readDataFields());
         this.id = typeNode.getId();
     }
 
@@ -85,14 +76,12 @@ class Neo4jTopicType extends TopicType {
     public void setTypeUri(String typeUri) {
         String oldTypeUri = (String) getProperty("de/deepamehta/core/property/TypeURI");
         // 1) update memory
-        storage.typeCache.remove(oldTypeUri);
         super.setTypeUri(typeUri);
-        storage.typeCache.put(this);
+        storage.typeCache.rename(oldTypeUri, this);
+        storage.nodeTypeCache.clear();  // the cached instance nodes still refer to the old URI
         // 2) update DB
         typeNode.setProperty("de/deepamehta/core/property/TypeURI", typeUri);
         storage.namespace.rename(oldTypeUri, typeUri);
-        // reassign data field sequence to new URI
-        reassignFieldSequence(oldTypeUri, typeUri);
     }
 
     // ---
@@ -112,104 +101,86 @@ class Neo4jTopicType extends TopicType {
      */
     @Override
     public void addDataField(DataField dataField) {
+        String labelFieldUri = storage.getLabelFieldUri(this);
         // 1) update DB
         String typeUri = (String) properties.get("de/deepamehta/core/property/TypeURI");
         // create data field
         Neo4jDataField field = new Neo4jDataField(dataField, storage);
         storage.getMetaClass(typeUri).getDirectProperties().add(field.getMetaProperty());
-        // put in sequence
-        putInFieldSequence(field.node, dataFields.size());
         // 2) update memory
         super.addDataField(field);
+        // 3) update DB
+        writeFieldOrder();
+        //
+        labelFieldChanged(labelFieldUri);
+    }
+
+    /**
+     * Replaces a data field of this topic type and writes the data field to the database. The data field node is
+     * kept. The cached data field is not modified in place, so a concurrent reader sees either the old or the new
+     * data field.
+     */
+    @Override
+    public void updateDataField(DataField dataField) {
+        Neo4jDataField field = getDataField(dataField.getUri());     // the data field to replace
+        // 1) update DB
+        Neo4jDataField newField = new Neo4jDataField(new HashMap(dataField.getProperties()), field.node);
+        // 2) update memory
+        super.updateDataField(newField);
     }
 
     @Override
     public void removeDataField(String uri) {
+        String labelFieldUri = storage.getLabelFieldUri(this);
         Neo4jDataField field = getDataField(uri);   // the data field to remove
-        int index = dataFields.indexOf(field);      // the index of the data field to remove
-        if (index == -1) {
-            throw new RuntimeException("List.indexOf() returned -1");
-        }
         // 1) update DB
-        // repair sequence
-        if (index == 0) {
-            if (dataFields.size() > 1) {
-                // The data field to remove is the first one and further data fields exist.
-                // -> Make the next data field the new start data field.
-                Node nextFieldNode = getDataField(index + 1).node;
-                startFieldSequence(nextFieldNode);
-            }
-        } else {
-            if (index < dataFields.size() - 1) {
-                // The data field to remove is surrounded by other data fields.
-                // -> Make the surrounding data fields direct neighbours.
-                Node nextFieldNode = getDataField(index + 1).node;
-                continueFieldSequence(nextFieldNode, index - 1);
-            }
-        }
-        // delete the data field topic including all of its (sequence) relations
+        // delete the data field topic including all of its relations
         storage.deleteTopic(field.node.getId());
         // 2) update memory
         super.removeDataField(uri);
+        // 3) update DB
+        writeFieldOrder();
+        //
+        labelFieldChanged(labelFieldUri);
     }
 
     @Override
     public void setDataFieldOrder(List uris) {
+        String labelFieldUri = storage.getLabelFieldUri(this);
         // 1) update memory
         super.setDataFieldOrder(uris);
         // 2) update DB
-        // delete sequence
-        String typeUri = (String) getProperty("de/deepamehta/core/property/TypeURI");
-        deleteFieldSequence(typeUri);
-        // re-create sequence
-        for (int i = 0; i < dataFields.size(); i++) {
-            putInFieldSequence(getDataField(i).node, i);
-        }
+        writeFieldOrder();
+        //
+        labelFieldChanged(labelFieldUri);
     }
 
     // ------------------------------------------------------------------------------------------------- Private Methods
 
-    private void putInFieldSequence(Node fieldNode, int index) {
-        if (index == 0) {
-            startFieldSequence(fieldNode);
-        } else {
-            continueFieldSequence(fieldNode, index - 1);
-        }
-    }
-
-    private void startFieldSequence(Node fieldNode) {
-        Relationship rel = typeNode.createRelationshipTo(fieldNode, Neo4jStorage.RelType.SEQUENCE_START);
-        String typeUri = (String) properties.get("de/deepamehta/core/property/TypeURI");
-        rel.setProperty("type_uri", typeUri);
-    }
-
-    private void continueFieldSequence(Node fieldNode, int prevFieldIndex) {
-        Node prevFieldNode = getDataField(prevFieldIndex).node;
-        Relationship rel = prevFieldNode.createRelationshipTo(fieldNode, Neo4jStorage.RelType.SEQUENCE);
-        String typeUri = (String) properties.get("de/deepamehta/core/property/TypeURI");
-        rel.setProperty("type_uri", typeUri);
-    }
-
-    // ---
-
-    private void reassignFieldSequence(String oldTypeUri, String typeUri) {
-        logger.info("### Re-assigning data field sequence from type \"" + oldTypeUri + "\" to \"" + typeUri + "\"");
-        int count = 0;
-        for (Path path : getFieldSequence(oldTypeUri)) {
-            path.lastRelationship().setProperty("type_uri", typeUri);
-            count++;
+    /**
+     * Relabels the instances of this type if the topic label field has changed, e.g. when the data field order
+     * changes and there is no explicit topic label field.
+     *
+     * @param   oldLabelFieldUri    the URI of the topic label field before the change.
+     */
+    private void labelFieldChanged(String oldLabelFieldUri) {
+        // Note: if there was no label field before, the instances are labeled "?" and the new label field,
+        // being a new data field, has no values yet.
+        if (oldLabelFieldUri != null && !oldLabelFieldUri.equals(storage.getLabelFieldUri(this))) {
+            storage.relabelTopics((String) getProperty("de/deepamehta/core/property/TypeURI"));
         }
-        logger.info("### " + count + " data fields re-assigned");
     }
 
-    private void deleteFieldSequence(String typeUri) {
-        logger.info("### Deleting data field sequence of type \"" + typeUri + "\"");
-        int count = 0;
-        for (Path path : getFieldSequence(typeUri)) {
-            path.lastRelationship().delete();
-            count++;
+    /**
+     * Writes the data field order to the database: the IDs of the data field nodes, in order, as one property of
+     * the type node.
+     */
+    private void writeFieldOrder() {
+        long[] fieldNodeIds = new long[dataFields.size()];
+        for (int i = 0; i < fieldNodeIds.length; i++) {
+            fieldNodeIds[i] = getDataField(i).node.getId();
         }
-        logger.info("### " + count + " relations deleted");
+        typeNode.setProperty(Neo4jStorage.KEY_FIELD_ORDER, fieldNodeIds);
     }
 
     // ---
@@ -226,13 +197,12 @@ class Neo4jTopicType extends TopicType {
         }
         //
         List dataFields = new ArrayList();
-        for (Path path : getFieldSequence(typeUri)) {
-            Node fieldNode = path.endNode();
-            logger.fine("  # Result " + fieldNode);
+        for (long fieldNodeId : (long[]) typeNode.getProperty(Neo4jStorage.KEY_FIELD_ORDER, new long[0])) {
+            Node fieldNode = storage.getNode(fieldNodeId);
             // error check
             if (!propNodes.contains(fieldNode)) {
                 throw new RuntimeException("Graph inconsistency for topic type \"" + typeUri + "\": " +
-                    fieldNode + " appears in data field sequence but is not a meta property node");
+                    fieldNode + " appears in data field order but is not a meta property node");
             }
             //
             dataFields.add(new Neo4jDataField(storage.getProperties(fieldNode), fieldNode));
@@ -240,44 +210,9 @@ class Neo4jTopicType extends TopicType {
         // error check
         if (propNodes.size() != dataFields.size()) {
             throw new RuntimeException("Graph inconsistency for topic type \"" + typeUri + "\": there are " +
-                dataFields.size() + " nodes in data field sequence but " + propNodes.size() + " meta property nodes");
+                dataFields.size() + " nodes in data field order but " + propNodes.size() + " meta property nodes");
         }
         //
         return dataFields;
     }
-
-    private Iterable<Path> getFieldSequence(String typeUri) {
-        TraversalDescription desc = Traversal.description();
-        desc = desc.relationships(Neo4jStorage.RelType.SEQUENCE_START, Direction.OUTGOING);
-        desc = desc.relationships(Neo4jStorage.RelType.SEQUENCE,       Direction.OUTGOING);
-        // A custom filter is used to return only the nodes of this topic type's individual path.
-        // The path is recognized by the "type_uri" property of the constitutive relationships.
-        desc = desc.filter(new SequenceReturnFilter(typeUri));
-        // We need breadth first in order to get the nodes in proper sequence order.
-        // (default is not breadth first, but probably depth first).
-        desc = desc.breadthFirst();
-        // We need to traverse a node more than once because it may be involved in many sequences.
-        // (default uniqueness is not RELATIONSHIP_GLOBAL, but probably NODE_GLOBAL).
-        desc = desc.uniqueness(Uniqueness.RELATIONSHIP_GLOBAL);
-        //
-        return desc.traverse(typeNode);
-    }
-
-    private class SequenceReturnFilter implements Predicate {
-
-        private String typeUri;
-
-        private SequenceReturnFilter(String typeUri) {
-            logger.fine("########## Traversing data field sequence for topic type \"" + typeUri + "\"");
-            this.typeUri = typeUri;
-        }
-
-        @Override
-        public boolean accept(Object item) {
-            Path path = (Path) item;
-            boolean doReturn = path.length() > 0 && path.lastRelationship().getProperty("type_uri").equals(typeUri);
-            logger.fine("### " + path.endNode() + " " + path.lastRelationship() + " => return=" + doReturn);
-            return doReturn;
-        }
-    }
 }
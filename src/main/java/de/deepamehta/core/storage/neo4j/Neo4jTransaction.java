@@ -1,27 +1,191 @@
 package de.deepamehta.core.storage.neo4j;
 
 import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Transaction;
 
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
 
 
+
+/**
+ * A Neo4j transaction.
+ * <p>
+ * Neo4j flattens nested transactions into the outermost one. Accordingly a Neo4jTransaction knows the transaction
+ * it is nested in, and the top-level transaction collects the actions to be run once it is committed.
+ * <p>
+ * The top-level transaction also buffers the index updates. They are coalesced per node and property key, and
+ * written right before commit.
+ */
 class Neo4jTransaction implements de.deepamehta.core.storage.Transaction {
 
+    // ---------------------------------------------------------------------------------------------- Instance Variables
+
     private Transaction tx;
+    private Neo4jStorage storage;
+    private Neo4jTransaction outerTx;       // the transaction this one is nested in, null for a top-level transaction
+
+    private boolean success;
+    private boolean failure;                // Note: once marked as failed the transaction is rolled back
+
+    private boolean rollbackOnly;           // top-level transaction only: a nested transaction did not succeed
+    private Set<Runnable> afterCommitActions = new LinkedHashSet();     // top-level transaction only
+    // top-level transaction only: the buffered index updates, hashed by node ID and property key
+    private Map<Long, Map<String, IndexUpdate>> indexUpdates = new LinkedHashMap();
 
-    Neo4jTransaction(GraphDatabaseService graphDb) {
-        tx = graphDb.beginTx();
+    private Logger logger = Logger.getLogger(getClass().getName());
+
+    // ---------------------------------------------------------------------------------------------------- Constructors
+
+    Neo4jTransaction(GraphDatabaseService graphDb, Neo4jStorage storage) {
+        this.tx = graphDb.beginTx();
+        this.storage = storage;
+        this.outerTx = storage.currentTx.get();
+        storage.currentTx.set(this);
     }
 
+    // -------------------------------------------------------------------------------------------------- Public Methods
+
     public void success() {
         tx.success();
+        success = true;
     }
 
     public void failure() {
         tx.failure();
+        failure = true;
     }
 
     public void finish() {
-        tx.finish();
+        RuntimeException flushError = null;
+        if (outerTx == null && success && !failure && !rollbackOnly) {
+            try {
+                flushIndexUpdates();
+            } catch (RuntimeException e) {
+                failure();
+                flushError = e;
+            }
+        }
+        //
+        boolean committed = false;
+        try {
+            tx.finish();
+            committed = success && !failure;
+        } finally {
+            storage.currentTx.set(outerTx);
+            if (outerTx != null) {
+                if (!committed) {
+                    outerTx.topLevel().rollbackOnly = true;
+                }
+            } else if (committed && !rollbackOnly) {
+                runAfterCommitActions();
+            } else {
+                // Note: the node type cache may hold nodes created by the rolled back transaction.
+                // Their IDs are free to be reused for nodes of other types.
+                storage.nodeTypeCache.clear();
+            }
+        }
+        //
+        if (flushError != null) {
+            throw new RuntimeException("Updating the index failed -- transaction rolled back", flushError);
+        }
+    }
+
+    // ----------------------------------------------------------------------------------------- Package Private Methods
+
+    /**
+     * Registers an action to be run once the top-level transaction is committed.
+     * If the transaction is rolled back the action is discarded. Equal actions are run only once.
+     */
+    void afterCommit(Runnable action) {
+        topLevel().afterCommitActions.add(action);
+    }
+
+    /**
+     * Buffers an index update. Repeated updates of the same node property are coalesced: the value indexed
+     * before the transaction is kept, the new value is replaced.
+     */
+    void bufferIndexUpdate(Node node, String key, Object value, Object oldValue, String typeUri) {
+        Map<Long, Map<String, IndexUpdate>> indexUpdates = topLevel().indexUpdates;
+        Map<String, IndexUpdate> nodeUpdates = indexUpdates.get(node.getId());
+        if (nodeUpdates == null) {
+            nodeUpdates = new LinkedHashMap();
+            indexUpdates.put(node.getId(), nodeUpdates);
+        }
+        IndexUpdate update = nodeUpdates.get(key);
+        if (update == null) {
+            nodeUpdates.put(key, new IndexUpdate(node, key, value, oldValue, typeUri));
+        } else {
+            update.value = value;
+        }
+    }
+
+    /**
+     * Drops the buffered index updates of a node. Called when the node is deleted.
+     */
+    void discardIndexUpdates(Node node) {
+        topLevel().indexUpdates.remove(node.getId());
+    }
+
+    /**
+     * Writes the buffered index updates. Updates which end up with the value indexed before are skipped.
+     * Called before commit, and before the index is queried within the transaction.
+     */
+    void flushIndexUpdates() {
+        Map<Long, Map<String, IndexUpdate>> indexUpdates = topLevel().indexUpdates;
+        if (indexUpdates.isEmpty()) {
+            return;
+        }
+        for (Map<String, IndexUpdate> nodeUpdates : indexUpdates.values()) {
+            for (IndexUpdate update : nodeUpdates.values()) {
+                if (!update.value.equals(update.oldValue)) {
+                    storage.writeIndex(update.node, update.key, update.value, update.oldValue, update.typeUri);
+                }
+            }
+        }
+        indexUpdates.clear();
+    }
+
+    // ------------------------------------------------------------------------------------------------- Private Methods
+
+    private Neo4jTransaction topLevel() {
+        Neo4jTransaction tx = this;
+        while (tx.outerTx != null) {
+            tx = tx.outerTx;
+        }
+        return tx;
+    }
+
+    private void runAfterCommitActions() {
+        for (Runnable action : afterCommitActions) {
+            try {
+                action.run();
+            } catch (Exception e) {
+                logger.warning("After-commit action " + action + " failed: " + e);
+            }
+        }
+    }
+
+    // -------------------------------------------------------------------------------------------------- Nested Classes
+
+    private static class IndexUpdate {
+
+        private Node node;
+        private String key;
+        private Object value;
+        private Object oldValue;    // the value indexed before the transaction, null if none
+        private String typeUri;
+
+        private IndexUpdate(Node node, String key, Object value, Object oldValue, String typeUri) {
+            this.node = node;
+            this.key = key;
+            this.value = value;
+            this.oldValue = oldValue;
+            this.typeUri = typeUri;
+        }
     }
 }
@@ -0,0 +1,130 @@
+package de.deepamehta.core.storage.neo4j;
+
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+
+
+/**
+ * Caches the topic type URI of instance nodes, hashed by node ID.
+ * <p>
+ * An open addressing hash table (linear probing) with primitive <code>long</code> keys. Type URIs are interned, so
+ * all entries of a type share one string. The cache is bounded: once it holds the maximum number of entries it is
+ * cleared and refilled on demand.
+ */
+class NodeTypeCache {
+
+    // ------------------------------------------------------------------------------------------------------- Constants
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final long FREE = -1;     // Neo4j node IDs are never negative
+
+    // ---------------------------------------------------------------------------------------------- Instance Variables
+
+    private final int maxSize;
+
+    private long[] keys;
+    private String[] values;
+    private int size;
+
+    private Logger logger = Logger.getLogger(getClass().getName());
+
+    // ---------------------------------------------------------------------------------------------------- Constructors
+
+    NodeTypeCache(int maxSize) {
+        this.maxSize = maxSize;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    // ----------------------------------------------------------------------------------------- Package Private Methods
+
+    /**
+     * @return  the type URI of the node, or <code>null</code> if the node is not in the cache.
+     */
+    synchronized String get(long nodeId) {
+        int i = indexOf(nodeId);
+        return keys[i] == nodeId ? values[i] : null;
+    }
+
+    synchronized void put(long nodeId, String typeUri) {
+        int i = indexOf(nodeId);
+        if (keys[i] != nodeId) {
+            if (size >= maxSize) {
+                logger.info("Node type cache is full (" + size + " entries) -- clearing it");
+                allocate(INITIAL_CAPACITY);
+            } else if (2 * (size + 1) > keys.length) {
+                rehash(2 * keys.length);
+            }
+            i = indexOf(nodeId);
+            keys[i] = nodeId;
+            size++;
+        }
+        values[i] = typeUri.intern();
+    }
+
+    synchronized void remove(long nodeId) {
+        int i = indexOf(nodeId);
+        if (keys[i] != nodeId) {
+            return;
+        }
+        // Backward shift deletion: move up the entries which would not be found anymore because of the gap.
+        int mask = keys.length - 1;
+        int gap = i;
+        for (int j = (i + 1) & mask; keys[j] != FREE; j = (j + 1) & mask) {
+            int home = hash(keys[j]) & mask;
+            // the entry at j may fill the gap if its home slot is not located cyclically in (gap, j]
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                keys[gap] = keys[j];
+                values[gap] = values[j];
+                gap = j;
+            }
+        }
+        keys[gap] = FREE;
+        values[gap] = null;
+        size--;
+    }
+
+    synchronized void clear() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    // ------------------------------------------------------------------------------------------------- Private Methods
+
+    /**
+     * Returns the slot which holds the given key, or the free slot where it would be inserted.
+     */
+    private int indexOf(long nodeId) {
+        int mask = keys.length - 1;
+        int i = hash(nodeId) & mask;
+        while (keys[i] != FREE && keys[i] != nodeId) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    private int hash(long nodeId) {
+        // Node IDs are dense, so spread them over the table (Fibonacci hashing)
+        return (int) ((nodeId * 0x9E3779B97F4A7C15L) >>> 32);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new String[capacity];
+        Arrays.fill(keys, FREE);
+        size = 0;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        String[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                int j = indexOf(oldKeys[i]);
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+                size++;
+            }
+        }
+    }
+}
@@ -1,17 +1,26 @@
 package de.deepamehta.core.storage.neo4j;
 
 import de.deepamehta.core.model.TopicType;
+import de.deepamehta.core.storage.Transaction;
 
-import java.util.Collection;
+import org.neo4j.meta.model.MetaModelClass;
+
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.logging.Logger;
 
 
 
+/**
+ * Holds all topic types in memory. The types are preloaded at storage initialization (see {@link #load}).
+ * <p>
+ * Lookups are lock-free: the cache is an immutable map which is replaced as a whole (copy-on-write) whenever a type
+ * is added, removed or renamed. Readers always see a consistent snapshot.
+ */
 public class TypeCache {
 
-    private Map<String, TopicType> topicTypes = new HashMap();
+    private volatile Map<String, TopicType> topicTypes = Collections.emptyMap();
     private Neo4jStorage storage;
 
     private Logger logger = Logger.getLogger(getClass().getName());
@@ -22,26 +31,82 @@ public class TypeCache {
 
     // ---
 
+    /**
+     * Loads all topic types from the database. Must be called within a transaction.
+     */
+    synchronized void load() {
+        Map<String, TopicType> topicTypes = new HashMap();
+        for (MetaModelClass metaClass : storage.getAllMetaClasses()) {
+            String typeUri = metaClass.getName();
+            topicTypes.put(typeUri, new Neo4jTopicType(typeUri, storage));
+        }
+        this.topicTypes = Collections.unmodifiableMap(topicTypes);
+        logger.info(topicTypes.size() + " topic types loaded into type cache");
+    }
+
     public TopicType get(String typeUri) {
         TopicType topicType = topicTypes.get(typeUri);
         if (topicType == null) {
-            logger.info("Loading topic type \"" + typeUri + "\" into type cache");
-            topicType = new Neo4jTopicType(typeUri, storage);
-            put(topicType);
+            topicType = load(typeUri);
         }
         return topicType;
     }
 
-    public void put(TopicType topicType) {
-        String typeUri = (String) topicType.getProperty("de/deepamehta/core/property/TypeURI");
-        topicTypes.put(typeUri, topicType);
+    public synchronized void put(TopicType topicType) {
+        Map<String, TopicType> topicTypes = new HashMap(this.topicTypes);
+        topicTypes.put(typeUri(topicType), topicType);
+        this.topicTypes = Collections.unmodifiableMap(topicTypes);
     }
 
-    public void remove(String typeUri) {
+    public synchronized void remove(String typeUri) {
+        Map<String, TopicType> topicTypes = new HashMap(this.topicTypes);
         if (topicTypes.remove(typeUri) != null) {
             logger.info("Removing topic type \"" + typeUri + "\" from type cache");
         } else {
             throw new RuntimeException("Topic type \"" + typeUri + "\" not found in type cache");
         }
+        this.topicTypes = Collections.unmodifiableMap(topicTypes);
+    }
+
+    /**
+     * Re-hashes a type under its new URI. Readers see the type either under its old or under its new URI, never
+     * under none of both.
+     */
+    public synchronized void rename(String oldTypeUri, TopicType topicType) {
+        Map<String, TopicType> topicTypes = new HashMap(this.topicTypes);
+        if (topicTypes.remove(oldTypeUri) == null) {
+            throw new RuntimeException("Topic type \"" + oldTypeUri + "\" not found in type cache");
+        }
+        topicTypes.put(typeUri(topicType), topicType);
+        this.topicTypes = Collections.unmodifiableMap(topicTypes);
+    }
+
+    // ---
+
+    /**
+     * Loads a type which was not present at initialization. As all types are preloaded this only happens for a
+     * type which is unknown -- then the load fails.
+     */
+    private synchronized TopicType load(String typeUri) {
+        TopicType topicType = topicTypes.get(typeUri);
+        if (topicType != null) {
+            return topicType;   // loaded by a concurrent thread meanwhile
+        }
+        logger.info("Loading topic type \"" + typeUri + "\" into type cache");
+        // Note: loading a type may write to the DB (data field defaults, see Neo4jDataField). So it is done
+        // in a transaction of its own, as the type may be requested within a read-only transaction.
+        Transaction tx = storage.beginTx();
+        try {
+            topicType = new Neo4jTopicType(typeUri, storage);
+            put(topicType);
+            tx.success();
+        } finally {
+            tx.finish();
+        }
+        return topicType;
+    }
+
+    private String typeUri(TopicType topicType) {
+        return (String) topicType.getProperty("de/deepamehta/core/property/TypeURI");
     }
 }
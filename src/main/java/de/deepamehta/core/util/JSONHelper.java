@@ -122,9 +122,24 @@ public class JSONHelper {
     }
 
     public static void createTopics(JSONArray topics, CoreService dms) throws JSONException {
+        // Note: consecutive topics of the same type are created at once
+        String typeUri = null;
+        List<Map> properties = new ArrayList();
         for (int i = 0; i < topics.length(); i++) {
             Topic topic = new Topic(topics.getJSONObject(i));
-            dms.createTopic(topic.typeUri, topic.getProperties(), null);                        // clientContext=null
+            if (!topic.typeUri.equals(typeUri)) {
+                createTopics(typeUri, properties, dms);
+                typeUri = topic.typeUri;
+                properties = new ArrayList();
+            }
+            properties.add(topic.getProperties());
+        }
+        createTopics(typeUri, properties, dms);
+    }
+
+    private static void createTopics(String typeUri, List<Map> properties, CoreService dms) {
+        if (!properties.isEmpty()) {
+            dms.createTopics(typeUri, properties, null);                                        // clientContext=null
         }
     }
 
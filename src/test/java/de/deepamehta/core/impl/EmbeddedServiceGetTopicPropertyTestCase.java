@@ -36,7 +36,7 @@ public class EmbeddedServiceGetTopicPropertyTestCase {
     @Test
     public void ok() {
         // call expections
-        expect(storageMock.beginTx()).andReturn(transactionMock);
+        expect(storageMock.beginReadOnlyTx()).andReturn(transactionMock);
         expect(storageMock.getTopicProperty(topicId, key)).andReturn(value);
         transactionMock.success();
         transactionMock.finish();
@@ -50,7 +50,7 @@ public class EmbeddedServiceGetTopicPropertyTestCase {
     @Test
     public void storageError() {
         // call expections
-        expect(storageMock.beginTx()).andReturn(transactionMock);
+        expect(storageMock.beginReadOnlyTx()).andReturn(transactionMock);
         expect(storageMock.getTopicProperty(topicId, key)).andThrow(throwable);
         transactionMock.finish();
 
@@ -67,7 +67,7 @@ public class EmbeddedServiceGetTopicPropertyTestCase {
 
     @Test
     public void beginTransactionError() {
-        expect(storageMock.beginTx()).andThrow(throwable);
+        expect(storageMock.beginReadOnlyTx()).andThrow(throwable);
         replay(storageMock);
 
         try {
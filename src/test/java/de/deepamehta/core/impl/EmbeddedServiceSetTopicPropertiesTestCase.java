@@ -0,0 +1,70 @@
+package de.deepamehta.core.impl;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.deepamehta.core.model.Topic;
+import de.deepamehta.core.storage.Storage;
+import de.deepamehta.core.storage.Transaction;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class EmbeddedServiceSetTopicPropertiesTestCase {
+
+    private EmbeddedService cut;
+    private Storage storageMock;
+    private Transaction transactionMock;
+
+    private long topicId = 1L;
+    private String typeUri = "de/deepamehta/core/topictype/Note";
+    private Map properties = new HashMap();
+
+    @Before
+    public void setup() {
+        cut = new EmbeddedService(true); // dummy constructor call
+
+        storageMock = createMock(Storage.class);
+        transactionMock = createMock(Transaction.class);
+        cut.setStorage(storageMock);
+
+        properties.put("title", "Note");
+        properties.put("text", "old text");
+    }
+
+    @Test
+    public void onlyChangedPropertiesAreWritten() {
+        Map newProperties = new HashMap(properties);
+        newProperties.put("text", "new text");
+        Map changedProperties = new HashMap();
+        changedProperties.put("text", "new text");
+        // call expections
+        expect(storageMock.beginTx()).andReturn(transactionMock);
+        expect(storageMock.getTopic(topicId)).andReturn(new Topic(topicId, typeUri, "Note", new HashMap(properties)));
+        storageMock.setTopicProperties(topicId, changedProperties);
+        transactionMock.success();
+        transactionMock.finish();
+
+        replay(storageMock, transactionMock);
+        cut.setTopicProperties(topicId, newProperties);
+        verify(storageMock, transactionMock);
+    }
+
+    @Test
+    public void unchangedPropertiesAreNotWritten() {
+        // call expections
+        expect(storageMock.beginTx()).andReturn(transactionMock);
+        expect(storageMock.getTopic(topicId)).andReturn(new Topic(topicId, typeUri, "Note", new HashMap(properties)));
+        transactionMock.success();
+        transactionMock.finish();
+
+        replay(storageMock, transactionMock);
+        cut.setTopicProperties(topicId, new HashMap(properties));
+        verify(storageMock, transactionMock);
+    }
+}
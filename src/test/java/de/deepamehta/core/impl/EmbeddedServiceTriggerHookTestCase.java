@@ -0,0 +1,187 @@
+package de.deepamehta.core.impl;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.isA;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.deepamehta.core.model.Topic;
+import de.deepamehta.core.service.Plugin;
+import de.deepamehta.core.storage.Storage;
+import de.deepamehta.core.storage.Transaction;
+
+import org.codehaus.jettison.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class EmbeddedServiceTriggerHookTestCase {
+
+    private EmbeddedService cut;
+    private Storage storageMock;
+    private Transaction transactionMock;
+
+    private String typeUri = "de/deepamehta/core/topictype/Note";
+    private List<Topic> topics = new ArrayList();
+
+    @Before
+    public void setup() {
+        cut = new EmbeddedService(true); // dummy constructor call
+
+        storageMock = createMock(Storage.class);
+        transactionMock = createMock(Transaction.class);
+        cut.setStorage(storageMock);
+
+        topics.add(new Topic(1, typeUri, "a", null));
+        topics.add(new Topic(2, typeUri, "b", null));
+    }
+
+    @Test
+    public void overriddenHookIsTriggered() {
+        CountingPlugin plugin = new CountingPlugin();
+        cut.registerPlugin(plugin);
+        // call expections
+        expect(storageMock.beginReadOnlyTx()).andReturn(transactionMock);
+        expect(storageMock.getTopics(typeUri)).andReturn(topics);
+        transactionMock.success();
+        transactionMock.finish();
+
+        replay(storageMock, transactionMock);
+        cut.getTopics(typeUri);
+        verify(storageMock, transactionMock);
+
+        assertEquals(2, plugin.count);
+    }
+
+    @Test
+    public void unregisteredPluginIsNotTriggered() {
+        CountingPlugin plugin = new CountingPlugin();
+        cut.registerPlugin(plugin);
+        cut.unregisterPlugin(plugin.getId());
+        // call expections
+        expect(storageMock.beginReadOnlyTx()).andReturn(transactionMock);
+        expect(storageMock.getTopics(typeUri)).andReturn(topics);
+        transactionMock.success();
+        transactionMock.finish();
+
+        replay(storageMock, transactionMock);
+        cut.getTopics(typeUri);
+        verify(storageMock, transactionMock);
+
+        assertEquals(0, plugin.count);
+    }
+
+    @Test
+    public void pluginIsTriggeredOnlyForDeclaredTopicTypes() {
+        CountingPlugin plugin = new CountingPlugin("de/deepamehta/core/topictype/Person");
+        cut.registerPlugin(plugin);
+        // call expections
+        expect(storageMock.beginReadOnlyTx()).andReturn(transactionMock);
+        expect(storageMock.getTopics(typeUri)).andReturn(topics);
+        transactionMock.success();
+        transactionMock.finish();
+
+        replay(storageMock, transactionMock);
+        cut.getTopics(typeUri);
+        verify(storageMock, transactionMock);
+
+        assertEquals(0, plugin.count);
+    }
+
+    @Test
+    public void declaredCommandIsDispatchedToDeclaringPlugin() {
+        CommandPlugin plugin = new CommandPlugin();
+        cut.registerPlugin(plugin);
+        // call expections
+        expect(storageMock.beginTx()).andReturn(transactionMock);
+        transactionMock.success();
+        transactionMock.finish();
+
+        replay(storageMock, transactionMock);
+        JSONObject result = cut.executeCommand("test", new HashMap(), null);
+        verify(storageMock, transactionMock);
+
+        assertSame(plugin.result, result);
+    }
+
+    @Test
+    public void asyncPostHookIsDeferredUntilCommit() {
+        AsyncPlugin plugin = new AsyncPlugin();
+        cut.registerPlugin(plugin);
+        // call expections
+        expect(storageMock.beginTx()).andReturn(transactionMock);
+        storageMock.deleteRelation(7);
+        storageMock.afterCommit(isA(Runnable.class));
+        transactionMock.success();
+        transactionMock.finish();
+
+        replay(storageMock, transactionMock);
+        cut.deleteRelation(7);
+        verify(storageMock, transactionMock);
+
+        assertEquals(0, plugin.count);
+    }
+
+    private static class CountingPlugin extends Plugin {
+
+        private int count;
+        private Set<String> typeUris;
+
+        private CountingPlugin(String... typeUris) {
+            if (typeUris.length > 0) {
+                this.typeUris = new HashSet(Arrays.asList(typeUris));
+            }
+        }
+
+        @Override
+        public Set<String> getHookTopicTypeUris() {
+            return typeUris;
+        }
+
+        @Override
+        public void providePropertiesHook(Topic topic) {
+            count++;
+        }
+    }
+
+    private static class AsyncPlugin extends Plugin {
+
+        private int count;
+
+        @Override
+        public boolean hasAsyncPostHooks() {
+            return true;
+        }
+
+        @Override
+        public void postDeleteRelationHook(long relationId) {
+            count++;
+        }
+    }
+
+    private static class CommandPlugin extends Plugin {
+
+        private JSONObject result = new JSONObject();
+
+        @Override
+        public Set<String> getCommands() {
+            return new HashSet(Arrays.asList("test"));
+        }
+
+        @Override
+        public JSONObject executeCommandHook(String command, Map params, Map<String, String> clientContext) {
+            return result;
+        }
+    }
+}
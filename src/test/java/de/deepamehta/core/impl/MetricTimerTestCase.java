@@ -0,0 +1,47 @@
+package de.deepamehta.core.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.deepamehta.core.model.Metric;
+
+public class MetricTimerTestCase {
+
+    private MetricTimer cut;
+
+    @Before
+    public void setup() {
+        cut = new MetricTimer("test");
+    }
+
+    @Test
+    public void recordedInvocationsAreCounted() {
+        cut.record(2000000);    // 2ms
+        cut.record(4000000);    // 4ms
+        Metric metric = cut.snapshot();
+        assertEquals(2, metric.getCount());
+        assertEquals(3.0, metric.getMeanMillis(), 0.001);
+        assertEquals(4.0, metric.getMaxMillis(), 0.001);
+    }
+
+    @Test
+    public void percentileIsUpperBoundOfBucket() {
+        for (int i = 0; i < 99; i++) {
+            cut.record(500000);     // 0.5ms -> bucket 512us
+        }
+        cut.record(100000000);      // 100ms -> bucket 131072us
+        Metric metric = cut.snapshot();
+        assertEquals(0.512, metric.getPercentileMillis(0.5), 0.001);
+        assertEquals(131.072, metric.getPercentileMillis(1.0), 0.001);
+    }
+
+    @Test
+    public void resetClearsTimer() {
+        cut.record(1000);
+        cut.reset();
+        assertEquals(0, cut.snapshot().getCount());
+        assertEquals(0.0, cut.snapshot().getMeanMillis(), 0.001);
+    }
+}